@@ -8,6 +8,7 @@ import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 
 import com.businessapp.fxgui.FXBuilder;
+import com.businessapp.logic.AvailabilityIntf;
 import com.businessapp.logic.LoggerProvider;
 import com.businessapp.logic.ManagedComponentIntf;
 import com.businessapp.repositories.RepositoryBuilder;
@@ -34,6 +35,7 @@ public class Application implements ManagedComponentIntf {
 
 	private FXBuilder fxBuilder;
 	private RepositoryBuilder repositoryBuilder;
+	private AvailabilityIntf availability;
 
 	/**
 	 * Protected constructor (protected to allow Spring Boot instance creation).
@@ -47,6 +49,7 @@ public class Application implements ManagedComponentIntf {
 		this.lifecycle = Lifecycle.zombie;
 		this.fxBuilder = null;
 		this.repositoryBuilder = null;
+		this.availability = null;
 	}
 
 
@@ -135,8 +138,22 @@ public class Application implements ManagedComponentIntf {
 			 */
 			repositoryBuilder.start();
 
+			/*
+			 * availability service tracks Reservations of started repositories.
+			 */
+			availability = AvailabilityIntf.createInstance(
+				repositoryBuilder.getReservationRepository(),
+				repositoryBuilder.getArticleRepository(),
+				AvailabilityIntf.DefaultRentalPeriod );
+			availability.start();
+
 			fxBuilder.start();
 
+			/*
+			 * load lazy repositories in the background while the GUI is shown.
+			 */
+			repositoryBuilder.preload();
+
 			lifecycle = Lifecycle.running;
 			break;
 
@@ -164,6 +181,11 @@ public class Application implements ManagedComponentIntf {
 				fxBuilder.stop();
 			}
 
+			if( availability != null ) {
+				availability.stop();
+				availability = null;
+			}
+
 			if( repositoryBuilder != null ) {
 				repositoryBuilder.stop();
 			}
@@ -220,8 +220,6 @@ public class FXBuilder extends Application implements ManagedComponentIntf {
 						tab.setId( tabId );
 						tabsPane.getTabs().add( tab );
 
-						TableViewFXMLController tvFxmlController = null;
-						TableViewable tv = null;
 						fxmlController.inject( this, tab );
 
 						switch( descr[ Idx.i_name.ordinal() ] ) {
@@ -229,46 +227,54 @@ public class FXBuilder extends Application implements ManagedComponentIntf {
 						// Create and configure TableView for Customer entities.
 						case RepositoryBuilder.Customer:
 							// 1. Cast fxmlController to TableViewFXMLController.
-							tvFxmlController = (TableViewFXMLController)fxmlController;
-							// 2. Fetch Customer data repository.
-							CustomerRepositoryIntf custRepo = (CustomerRepositoryIntf)RepositoryBuilder.getInstance().getCustomerRepository();
-							// 3. Configure FXMLController with "isResizable" feature (resizable column widths).
-							tvFxmlController.inject( "1".equals( descr[ Idx.i_rszTble.ordinal() ] ) );
-							// 4. Create TableView for Customer and inject FXMLController and Customer repository into TableView.
-							tv = TableViewable.createTableView_Customer( tvFxmlController, custRepo );
-							// 5. Inject created TableView back into FXMLController.
-							tvFxmlController.inject( tv );
-							tvFxmlController.start();	// Start FXMLController.
-							tv.start();	// Start TableView.
+							final TableViewFXMLController custFxmlController = (TableViewFXMLController)fxmlController;
+							// Steps 2.-5. run when the Customer repository has been loaded.
+							openWhenLoaded( tab, RepositoryBuilder.Customer, () -> {
+								// 2. Fetch Customer data repository.
+								CustomerRepositoryIntf custRepo = (CustomerRepositoryIntf)RepositoryBuilder.getInstance().getCustomerRepository();
+								// 3. Configure FXMLController with "isResizable" feature (resizable column widths).
+								custFxmlController.inject( "1".equals( descr[ Idx.i_rszTble.ordinal() ] ) );
+								// 4. Create TableView for Customer and inject FXMLController and Customer repository into TableView.
+								TableViewable custTv = TableViewable.createTableView_Customer( custFxmlController, custRepo );
+								// 5. Inject created TableView back into FXMLController.
+								custFxmlController.inject( custTv );
+								custFxmlController.start();	// Start FXMLController.
+								custTv.start();	// Start TableView.
+							});
 							break;
 
 						case RepositoryBuilder.Article:
-							tvFxmlController = (TableViewFXMLController)fxmlController;
-							ArticleRepositoryIntf articleRepo = (ArticleRepositoryIntf)RepositoryBuilder.getInstance().getArticleRepository();
-							tvFxmlController.inject( "1".equals( descr[ Idx.i_rszTble.ordinal() ] ) ); 	// isResizable feature
-							tv = TableViewable.createTableView_Article( tvFxmlController, articleRepo );
-							tvFxmlController.inject( tv );
-							tvFxmlController.start();
-							tv.start();
+							final TableViewFXMLController articleFxmlController = (TableViewFXMLController)fxmlController;
+							openWhenLoaded( tab, RepositoryBuilder.Article, () -> {
+								ArticleRepositoryIntf articleRepo = (ArticleRepositoryIntf)RepositoryBuilder.getInstance().getArticleRepository();
+								articleFxmlController.inject( "1".equals( descr[ Idx.i_rszTble.ordinal() ] ) ); 	// isResizable feature
+								TableViewable articleTv = TableViewable.createTableView_Article( articleFxmlController, articleRepo );
+								articleFxmlController.inject( articleTv );
+								articleFxmlController.start();
+								articleTv.start();
+							});
 							break;
 
 						case RepositoryBuilder.Reservation:
 							// 1. Cast fxmlController to TableViewFXMLController.
-							tvFxmlController = (TableViewFXMLController)fxmlController;
+							final TableViewFXMLController reservationFxmlController = (TableViewFXMLController)fxmlController;
 
-							// 2. Fetch Customer data repository.
-							ReservationRepositoryIntf reservationRepo = RepositoryBuilder.getInstance().getReservationRepository();
+							// Steps 2.-5. run when the Reservation repository has been loaded.
+							openWhenLoaded( tab, RepositoryBuilder.Reservation, () -> {
+								// 2. Fetch Customer data repository.
+								ReservationRepositoryIntf reservationRepo = RepositoryBuilder.getInstance().getReservationRepository();
 
-							// 3. Configure FXMLController with "isResizable" feature (resizable column widths).
-							tvFxmlController.inject( "1".equals( descr[ Idx.i_rszTble.ordinal() ] ) );
+								// 3. Configure FXMLController with "isResizable" feature (resizable column widths).
+								reservationFxmlController.inject( "1".equals( descr[ Idx.i_rszTble.ordinal() ] ) );
 
-							// 4. Create TableView for Customer and inject FXMLController and Customer repository into TableView.
-							tv = TableViewable.createTableView_Reservation( tvFxmlController, reservationRepo );
+								// 4. Create TableView for Customer and inject FXMLController and Customer repository into TableView.
+								TableViewable reservationTv = TableViewable.createTableView_Reservation( reservationFxmlController, reservationRepo );
 
-							// 5. Inject created TableView back into FXMLController.
-							tvFxmlController.inject( tv );
-							tvFxmlController.start();	// Start FXMLController.
-							tv.start();	// Start TableView.
+								// 5. Inject created TableView back into FXMLController.
+								reservationFxmlController.inject( reservationTv );
+								reservationFxmlController.start();	// Start FXMLController.
+								reservationTv.start();	// Start TableView.
+							});
 							break;
 
 
@@ -308,4 +314,34 @@ public class FXBuilder extends Application implements ManagedComponentIntf {
 		}
 	}
 
+	/*
+	 * Run open in FXGui-Thread once the repository shown in a tab has been loaded.
+	 * Loading is requested in the background when the tab is first selected such
+	 * that the window is shown without waiting for repositories.
+	 */
+	private void openWhenLoaded( Tab tab, String repository, Runnable open ) {
+		final boolean[] requested = { false };
+		final Runnable request = () -> {
+			if( ! requested[ 0 ] ) {
+				requested[ 0 ] = true;
+				RepositoryBuilder.getInstance().load( repository ).whenComplete( ( v, e ) -> {
+					if( e != null ) {
+						log.error( "loading " + repository + " failed: " + e.getMessage(), null );
+
+					} else {
+						Platform.runLater( open );
+					}
+				});
+			}
+		};
+		tab.setOnSelectionChanged( ev -> {
+			if( tab.isSelected() ) {
+				request.run();
+			}
+		});
+		if( tab.isSelected() ) {
+			request.run();
+		}
+	}
+
 }
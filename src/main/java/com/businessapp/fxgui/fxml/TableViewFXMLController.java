@@ -3,6 +3,8 @@ package com.businessapp.fxgui.fxml;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.collections.ObservableList;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.SelectionMode;
 import javafx.scene.control.Tab;
 import javafx.scene.control.TableCell;
@@ -159,7 +161,13 @@ public class TableViewFXMLController implements FXMLControllerIntf {//, Reposito
 				ids.add( tvd.getId() );
 			}
 			fxTableView_TableView.getSelectionModel().clearSelection();
-			tvd.delete( ids );
+			try {
+				tvd.delete( ids );
+
+			} catch( IllegalStateException e ) {
+				// delete refused, e.g. Customers with active reservations
+				new Alert( AlertType.WARNING, e.getMessage() ).showAndWait();
+			}
 		} else {
 			//TODO: log
 			System.err.println( "nothing selected." );
@@ -0,0 +1,70 @@
+package com.businessapp.logic;
+
+import java.util.Date;
+import java.util.List;
+
+import com.businessapp.model.Article;
+import com.businessapp.repositories.ArticleRepositoryIntf;
+import com.businessapp.repositories.ReservationRepositoryIntf;
+
+
+/**
+ * Public interface of a service that answers whether Articles are available
+ * for rent in a time window [from, to) based on Reservations.
+ *
+ * A Reservation blocks each of its Articles from its date for the rental period.
+ * TERMINATED Reservations and Reservations without date do not block Articles.
+ *
+ */
+public interface AvailabilityIntf extends ManagedComponentIntf {
+
+	/**
+	 * Default rental period of a Reservation (1 day in msec).
+	 */
+	public static final long DefaultRentalPeriod = 24L * 60 * 60 * 1000;
+
+
+	/**
+	 * Public factory method that creates an availability service for repositories.
+	 * The service tracks changes of Reservations after it was started.
+	 *
+	 * @param reservations Reservation repository.
+	 * @param articles Article repository.
+	 * @param rentalPeriod period in msec an Article is blocked from the date of a Reservation.
+	 * @return new availability service.
+	 */
+	public static AvailabilityIntf createInstance( ReservationRepositoryIntf reservations, ArticleRepositoryIntf articles, long rentalPeriod ) {
+		AvailabilityIntf availability = new AvailabilityLogic( reservations, articles, rentalPeriod );
+		return availability;
+	}
+
+
+	/**
+	 * Test whether Article is available in time window.
+	 * @param articleId id of Article.
+	 * @param from begin of window (inclusive).
+	 * @param to end of window (exclusive).
+	 * @return true if no Reservation blocks the Article in the window.
+	 */
+	public boolean isAvailable( String articleId, Date from, Date to );
+
+
+	/**
+	 * Return ids of Reservations that block an Article in time window.
+	 * @param articleId id of Article.
+	 * @param from begin of window (inclusive).
+	 * @param to end of window (exclusive).
+	 * @return ids of conflicting Reservations, empty list if none.
+	 */
+	public List<String> findConflicts( String articleId, Date from, Date to );
+
+
+	/**
+	 * Return Articles that are available in time window.
+	 * @param from begin of window (inclusive).
+	 * @param to end of window (exclusive).
+	 * @return available Articles.
+	 */
+	public List<Article> findAvailableArticles( Date from, Date to );
+
+}
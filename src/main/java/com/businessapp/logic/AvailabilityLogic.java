@@ -0,0 +1,169 @@
+package com.businessapp.logic;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import com.businessapp.model.Article;
+import com.businessapp.model.Reservation;
+import com.businessapp.model.Reservation.ReservationStatus;
+import com.businessapp.repositories.ArticleRepositoryIntf;
+import com.businessapp.repositories.RepositoryListenerIntf;
+import com.businessapp.repositories.ReservationRepositoryIntf;
+
+
+/**
+ * Local implementation of AvailabilityIntf that keeps one IntervalTree of
+ * blocked windows per Article. Trees are updated incrementally from change
+ * notifications of the Reservation repository. The window each Reservation
+ * blocks is remembered such that Reservations altered in place are moved.
+ *
+ */
+class AvailabilityLogic implements AvailabilityIntf, RepositoryListenerIntf<Reservation> {
+	private static final LoggerProvider log = LoggerProvider.getLogger( AvailabilityLogic.class );
+
+	private final ReservationRepositoryIntf reservations;
+	private final ArticleRepositoryIntf articles;
+	private final long rentalPeriod;
+
+	private final HashMap<String,IntervalTree> trees;	// article id -> blocked windows
+	private final HashMap<String,Object[]> blocked;		// reservation id -> { start, article ids }
+
+
+	/**
+	 * Constructor.
+	 * @param reservations Reservation repository.
+	 * @param articles Article repository.
+	 * @param rentalPeriod period in msec an Article is blocked from the date of a Reservation.
+	 */
+	AvailabilityLogic( ReservationRepositoryIntf reservations, ArticleRepositoryIntf articles, long rentalPeriod ) {
+		this.reservations = reservations;
+		this.articles = articles;
+		this.rentalPeriod = rentalPeriod;
+		this.trees = new HashMap<String,IntervalTree>();
+		this.blocked = new HashMap<String,Object[]>();
+	}
+
+
+	/**
+	 * Basic lifecycle operations inherited from ManagedComponentIntf.
+	 * start() subscribes to Reservation changes and builds trees from
+	 * present Reservations, stop() unsubscribes.
+	 */
+	@Override
+	public void start() {
+		reservations.addListener( this );
+		synchronized( this ) {
+			clear();
+			for( Reservation r : reservations.snapshot() ) {
+				block( r );
+			}
+			log.info( getName() + " started (" + blocked.size() + " reservations)." );
+		}
+	}
+
+	@Override
+	public void stop() {
+		reservations.removeListener( this );
+		synchronized( this ) {
+			clear();
+		}
+	}
+
+	@Override
+	public String getName() {
+		return this.getClass().getSimpleName();
+	}
+
+
+	@Override
+	public synchronized boolean isAvailable( String articleId, Date from, Date to ) {
+		IntervalTree tree = trees.get( articleId );
+		return tree == null || ! tree.overlaps( from.getTime(), to.getTime() );
+	}
+
+	@Override
+	public synchronized List<String> findConflicts( String articleId, Date from, Date to ) {
+		List<String> ids = new ArrayList<String>();
+		IntervalTree tree = trees.get( articleId );
+		if( tree != null ) {
+			tree.overlapping( from.getTime(), to.getTime(), ids );
+		}
+		return ids;
+	}
+
+	@Override
+	public List<Article> findAvailableArticles( Date from, Date to ) {
+		List<Article> result = new ArrayList<Article>();
+		for( Article a : articles.snapshot() ) {
+			if( isAvailable( a.getId(), from, to ) ) {
+				result.add( a );
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Change notification from the Reservation repository.
+	 */
+	@Override
+	public synchronized void changed( Change change, Reservation r ) {
+		switch( change ) {
+		case inserted:
+		case updated:
+			unblock( r.getId() );
+			block( r );
+			break;
+
+		case deleted:
+			unblock( r.getId() );
+			break;
+
+		case cleared:
+			clear();
+			break;
+		}
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	private void block( Reservation r ) {
+		if( r.getDate() == null || r.getStatus() == ReservationStatus.TERMINATED ) {
+			return;
+		}
+		final long start = r.getDate().getTime();
+		final List<String> aids = new ArrayList<String>( r.getArticleIds() );
+		for( String aid : aids ) {
+			trees.computeIfAbsent( aid, k -> new IntervalTree() ).insert( start, start + rentalPeriod, r.getId() );
+		}
+		blocked.put( r.getId(), new Object[] { start, aids } );
+	}
+
+	@SuppressWarnings("unchecked")
+	private void unblock( String rid ) {
+		Object[] prior = blocked.remove( rid );
+		if( prior != null ) {
+			final long start = (Long)prior[0];
+			for( String aid : (List<String>)prior[1] ) {
+				IntervalTree tree = trees.get( aid );
+				if( tree != null ) {
+					tree.remove( start, rid );
+					if( tree.size() == 0 ) {
+						trees.remove( aid );
+					}
+				}
+			}
+		}
+	}
+
+	private void clear() {
+		trees.clear();
+		blocked.clear();
+	}
+
+}
@@ -1,5 +1,26 @@
 package com.businessapp.logic;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
 
 /**
  * Public class for a simple random ID-Generator that supports a variety
@@ -7,6 +28,25 @@ package com.businessapp.logic;
  * 	- "C.ED84DX" using prefix "C." followed by a random number of type AIRLINE-code
  *  - "3450629369" as simple 10-digit decimal number
  *  - "A8C86ED4D8" as 10-digit hex number.
+ *  - "R.2QIRHJD6MU01" as time-ordered id of type TIMED.
+ * 
+ * TIMED ids are composed of a timestamp (8 digits, msec since 2020-01-01), a
+ * node id (2 digits) and a sequence number (remaining digits, at most 4, further
+ * digits are random) encoded in ascending base-36 digits, such that ids sort in
+ * the order they were generated. The node id is leased per JVM with a lock file
+ * in the directory set with setNodeDirectory(), e.g. the data directory of the
+ * repositories, JVMs sharing the directory generate disjoint ids. The lease
+ * and its lock file are released by releaseNode() or when the JVM exits.
+ * 
+ * Ids of a generator can be packed into a primitive long (the value of the
+ * digits after the prefix) if all digit combinations fit, e.g. for AIRLINE ids
+ * of 6 digits or TIMED ids of 12 digits. Ids that do not match the format of
+ * the generator, e.g. imported ids, are not packed.
+ * 
+ * Random digits are drawn in chunks from per-thread random state such that
+ * concurrent callers do not contend. An optional collision check, e.g. a
+ * lookup in the key index of the owning repository, rejects ids that are
+ * already in use. The check is installed and removed by its owner.
  * 
  * @author Sven Graupner
  *
@@ -14,16 +54,48 @@ package com.businessapp.logic;
 public class IDGenerator {
 	private final String prefix;
 	private final int len;
-	private final String alphabet;
+	private final char[] alphabet;
+	private final int chunkSize;		// number of digits drawn from one random long
+	private final long[] powers;		// powers[ k ] = alphabet.length ^ k for k <= chunkSize
+	private final int[] digits;			// digit value by char, -1 for chars not in alphabet
+	private final boolean packable;		// true if all ids fit into a long
+	private volatile Predicate<String> inUse;
 
-	public enum IDTYPE { ALPHANUM, AIRLINE, NUM, HEX, BIN };
+	/**
+	 * Value returned by pack() for ids that cannot be packed.
+	 */
+	public static final long NotPacked = -1L;
+
+	/*
+	 * State of TIMED ids: timestamp * sequenceRange + sequence of the last id.
+	 */
+	private final AtomicLong clock;
+	private final int sequenceDigits;
+	private final long sequenceRange;
+
+	/*
+	 * Layout of TIMED ids.
+	 */
+	static final long Epoch = 1577836800000L;	// 2020-01-01T00:00:00Z
+	static final int TimeDigits = 8;			// msec until year 2109
+	static final int NodeDigits = 2;			// 1296 nodes
+	static final int MaxSequenceDigits = 4;	// keeps clock state in a long
+	static final int MinTimedLength = TimeDigits + NodeDigits + 2;
+
+	/*
+	 * Maximum attempts to find an unused id before the id space is considered exhausted.
+	 */
+	static final int MaxAttempts = 1000;
+
+	public enum IDTYPE { ALPHANUM, AIRLINE, NUM, HEX, BIN, TIMED };
 
 	private static final String[] alphabets = new String[] {
 		"0123456789" + "ABCDEGFHIJKLMNOPQRSTUVWXYZ" + "abcdefghijklmnopqrstuwvxyz",
 		"0123456789" + "ABCDEGFHIJKLMNOPQRSTUVWXYZ",
 		"0123456789",
 		"0123456789ABCDEF",
-		"01"
+		"01",
+		"0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ"
 	};
 
 	/**
@@ -31,36 +103,379 @@ public class IDGenerator {
 	 * @param prefix prefix followed by random number.
 	 * @param type one of the IDTYPE's.
 	 * @param len total number of digits.
+	 * @throws IllegalArgumentException if len is too short for TIMED ids.
 	 */
 	public IDGenerator( String prefix, IDTYPE type, int len ) {
-		this.prefix = prefix;
+		if( type == IDTYPE.TIMED && len < MinTimedLength ) {
+			throw new IllegalArgumentException( "TIMED ids need at least " + MinTimedLength + " digits: " + len );
+		}
+		this.prefix = prefix==null? "" : prefix;
 		this.len = len;
-		this.alphabet = alphabets[ type.ordinal() ];
+		this.alphabet = alphabets[ type.ordinal() ].toCharArray();
+		Arrays.sort( this.alphabet );		// digit values ascend with chars such that packed ids sort like ids
+		final long radix = alphabet.length;
+		int k = 0;
+		while( pow( radix, k + 1 ) > 0 && k < len ) {
+			k++;
+		}
+		this.chunkSize = Math.max( 1, k );
+		this.powers = new long[ chunkSize + 1 ];
+		for( int i=0; i <= chunkSize; i++ ) {
+			powers[ i ] = pow( radix, i );
+		}
+		this.digits = new int[ 128 ];
+		Arrays.fill( digits, -1 );
+		for( int i=0; i < alphabet.length; i++ ) {
+			digits[ alphabet[ i ] ] = i;
+		}
+		this.packable = pow( radix, len ) > 0;
+		this.inUse = null;
+		this.clock = type == IDTYPE.TIMED? new AtomicLong( 0L ) : null;
+		this.sequenceDigits = Math.min( MaxSequenceDigits, len - TimeDigits - NodeDigits );
+		this.sequenceRange = pow( alphabet.length, Math.max( 0, sequenceDigits ) );
+	}
+
+	/**
+	 * Set collision check that tells whether an id is already in use, e.g. a
+	 * lookup in the key index of the repository that owns the ids.
+	 * @param inUse predicate that returns true for ids in use, null for no check.
+	 */
+	public synchronized void setCollisionCheck( Predicate<String> inUse ) {
+		this.inUse = inUse;
+	}
+
+	/**
+	 * Remove collision check if it is the check set last, e.g. when the
+	 * repository that installed it stops. Checks set by others are kept.
+	 * @param inUse collision check to remove.
+	 */
+	public synchronized void removeCollisionCheck( Predicate<String> inUse ) {
+		if( this.inUse == inUse ) {
+			this.inUse = null;
+		}
+	}
+
+	/**
+	 * Set directory in which node ids of TIMED ids are leased with lock files,
+	 * e.g. the data directory of repositories. Takes effect if set before the
+	 * first TIMED id is generated.
+	 * @param directory directory of node lock files.
+	 */
+	public static void setNodeDirectory( String directory ) {
+		NodeLease.directory = directory;
+	}
+
+	/**
+	 * Release the node id leased for TIMED ids and delete its lock file, e.g.
+	 * when the application stops. A later TIMED id leases a node id again.
+	 */
+	public static void releaseNode() {
+		NodeLease.release();
+	}
+
+	/**
+	 * Test whether ids of this generator can be packed into a long.
+	 * @return true if ids can be packed.
+	 */
+	public boolean isPackable() {
+		return packable;
+	}
+
+	/**
+	 * Pack id into a non-negative long. Digit values ascend with their chars, so
+	 * packed ids of the same generator compare like the ids as Strings. Packed
+	 * values of different generators must not be mixed.
+	 * @param id id to pack.
+	 * @return packed id or NotPacked if id does not match the format of this generator.
+	 */
+	public long pack( String id ) {
+		final int plen = prefix.length();
+		if( ! packable || id == null || id.length() != plen + len || ! id.startsWith( prefix ) ) {
+			return NotPacked;
+		}
+		final int radix = alphabet.length;
+		long value = 0;
+		for( int i = plen; i < plen + len; i++ ) {
+			final char c = id.charAt( i );
+			final int d = c < digits.length? digits[ c ] : -1;
+			if( d < 0 ) {
+				return NotPacked;
+			}
+			value = value * radix + d;
+		}
+		return value;
+	}
+
+	/**
+	 * Unpack id packed by pack().
+	 * @param packed packed id.
+	 * @return id.
+	 * @throws IllegalArgumentException if packed is not a packed id of this generator.
+	 */
+	public String unpack( long packed ) {
+		if( ! packable || packed < 0 || packed >= pow( alphabet.length, len ) ) {
+			throw new IllegalArgumentException( "not a packed id: " + packed );
+		}
+		final char[] buf = new char[ prefix.length() + len ];
+		prefix.getChars( 0, prefix.length(), buf, 0 );
+		encode( buf, prefix.length(), packed, len );
+		return new String( buf );
 	}
 
 	/**
 	 * Generate next id.
 	 * @return next id according to the format specified in the constructor.
+	 * @throws IllegalStateException if no unused id was found or, for TIMED ids,
+	 * no node id could be leased.
 	 */
 	public String nextId() {
-		final int alphaLen = alphabet.length();
-		final int chunkSize = 10;	// generate + append chunks of up to 10 digits (long limit)
-		StringBuffer sb = new StringBuffer();
-		if( prefix != null ) {
-			sb.append( prefix );
-		}
-		for( int l1 = len; l1 > 0; l1 -= chunkSize ) {
-			int l2 = Math.min( chunkSize,  l1 );
-			long rnd = (long)( Math.random() * Math.pow( alphaLen, l2 ) );
-			for( int i=0; i++ < l2; rnd /= alphaLen ) {
-				int k1 = (int)( rnd % alphaLen );
-				sb.append( alphabet.charAt( (int)k1 ) );
+		final char[] buf = new char[ prefix.length() + len ];
+		prefix.getChars( 0, prefix.length(), buf, 0 );
+		final Predicate<String> check = inUse;
+		for( int attempt=0; attempt < MaxAttempts; attempt++ ) {
+			final String id = fill( buf );
+			if( check == null || ! check.test( id ) ) {
+				return id;
+			}
+		}
+		throw new IllegalStateException( "no unused id found after " + MaxAttempts + " attempts (" + prefix + ")" );
+	}
+
+	/**
+	 * Generate a batch of distinct ids, e.g. for bulk imports.
+	 * @param n number of ids.
+	 * @return n distinct ids that are not in use.
+	 * @throws IllegalStateException if not enough unused ids were found or, for
+	 * TIMED ids, no node id could be leased.
+	 */
+	public List<String> nextIds( int n ) {
+		final List<String> ids = new ArrayList<String>( n );
+		final HashSet<String> issued = new HashSet<String>( n * 2 );
+		final char[] buf = new char[ prefix.length() + len ];
+		prefix.getChars( 0, prefix.length(), buf, 0 );
+		final Predicate<String> check = inUse;
+		int failed = 0;
+		while( ids.size() < n ) {
+			final String id = fill( buf );
+			if( ( check == null || ! check.test( id ) ) && issued.add( id ) ) {
+				ids.add( id );
+				failed = 0;
+
+			} else if( ++failed >= MaxAttempts ) {
+				throw new IllegalStateException( "no unused id found after " + MaxAttempts + " attempts (" + prefix + ")" );
+			}
+		}
+		return ids;
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Fill digits after the prefix and return as String.
+	 */
+	private String fill( char[] buf ) {
+		int i = prefix.length();
+		int random = len;
+		if( clock != null ) {
+			final long state = tick();
+			i = encode( buf, i, state / sequenceRange, TimeDigits );
+			i = encode( buf, i, NodeLease.node(), NodeDigits );
+			i = encode( buf, i, state % sequenceRange, sequenceDigits );
+			random -= TimeDigits + NodeDigits + sequenceDigits;
+		}
+		return fillRandom( buf, i, random );
+	}
+
+	/**
+	 * Fill n random digits from position i and return as String.
+	 */
+	private String fillRandom( char[] buf, int i, int n ) {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final int radix = alphabet.length;
+		for( int l1 = n; l1 > 0; l1 -= chunkSize ) {
+			final int l2 = Math.min( chunkSize, l1 );
+			long rnd = random.nextLong( powers[ l2 ] );
+			for( int j=0; j < l2; j++, rnd /= radix ) {
+				buf[ i++ ] = alphabet[ (int)( rnd % radix ) ];
+			}
+		}
+		return new String( buf );
+	}
+
+	/**
+	 * Advance clock to the current time or, if the time has not advanced (or
+	 * went backwards), to the next sequence number. Lock-free and monotonic.
+	 */
+	private long tick() {
+		while( true ) {
+			final long prior = clock.get();
+			final long now = ( System.currentTimeMillis() - Epoch ) * sequenceRange;
+			final long next = now > prior? now : prior + 1;
+			if( clock.compareAndSet( prior, next ) ) {
+				return next;
 			}
 		}
-		for( int i=sb.length(); i < len; i++ ) {
-			sb.insert( 0, "0" );
+	}
+
+	/**
+	 * Encode value as n digits, most significant first, from position i.
+	 * @return position after the digits.
+	 */
+	private int encode( char[] buf, int i, long value, int n ) {
+		final int radix = alphabet.length;
+		for( int j = i + n - 1; j >= i; j-- ) {
+			buf[ j ] = alphabet[ (int)( value % radix ) ];
+			value /= radix;
+		}
+		return i + n;
+	}
+
+	/**
+	 * Node id of this JVM for TIMED ids, leased on first use by locking a file
+	 * node-<n>.lock in the node directory. The lock is held until release() or
+	 * until the JVM exits, both delete the lock file. Ids are not generated with
+	 * a node id that is not leased, a failed lease is passed to the caller.
+	 *
+	 * The holder deletes the lock file before it releases the lock. A JVM that
+	 * locked a file that was deleted meanwhile detects it by a token it writes
+	 * into the locked file and reads back by name, and tries the next node.
+	 *
+	 * Probing creates no files: existing lock files are opened without CREATE,
+	 * e.g. files left by a JVM that was killed are leased again, and a new file
+	 * is only created for a node that has none.
+	 */
+	private static class NodeLease {
+		private static final LoggerProvider log = LoggerProvider.getLogger( IDGenerator.class );
+		private static final int Nodes = 36 * 36;
+		private static volatile String directory = ".";
+		private static volatile int leased = -1;		// leased node id, -1 when not leased
+		private static FileChannel channel = null;		// kept open to hold the lock
+		private static Path lockFile = null;
+		private static boolean hooked = false;			// shutdown hook registered
+
+		static int node() {
+			final int node = leased;
+			return node >= 0? node : lease();
+		}
+
+		private static synchronized int lease() {
+			if( leased >= 0 ) {
+				return leased;
+			}
+			final int node = acquire( directory );
+			if( ! hooked ) {
+				Runtime.getRuntime().addShutdownHook( new Thread( NodeLease::release, "NodeLease" ) );
+				hooked = true;
+			}
+			leased = node;
+			return node;
+		}
+
+		static synchronized void release() {
+			if( channel == null ) {
+				return;
+			}
+			try {
+				Files.deleteIfExists( lockFile );	// before the lock is released, see owned()
+
+			} catch( IOException e ) {
+				log.error( "==> deleting " + lockFile + " failed: " + e.getMessage(), e );
+			}
+			try {
+				channel.close();
+
+			} catch( IOException e ) {
+				log.error( "==> releasing " + lockFile + " failed: " + e.getMessage(), e );
+			}
+			log.info( "==> released node id " + leased + " of time-ordered ids." );
+			channel = null;
+			lockFile = null;
+			leased = -1;
+		}
+
+		private static int acquire( String directory ) {
+			final int start = ThreadLocalRandom.current().nextInt( Nodes );
+			final byte[] token = UUID.randomUUID().toString().getBytes();
+			try {
+				new File( directory ).mkdirs();
+				for( int k=0; k < Nodes; k++ ) {
+					final int node = ( start + k ) % Nodes;
+					final Path file = Paths.get( directory, "node-" + node + ".lock" );
+					final FileChannel ch = open( file );
+					if( ch == null ) {
+						continue;		// created or deleted concurrently
+					}
+					FileLock lock = null;
+					try {
+						lock = ch.tryLock();
+
+					} catch( OverlappingFileLockException e ) {
+						// lock held by another generator in this JVM, e.g. other class loader
+					}
+					if( lock != null && owned( ch, file, token ) ) {
+						channel = ch;
+						lockFile = file;
+						log.info( "==> leased node id " + node + " for time-ordered ids." );
+						return node;
+					}
+					ch.close();
+				}
+
+			} catch( IOException e ) {
+				throw new IllegalStateException( "leasing node id for time-ordered ids failed in " + directory + ": " + e.getMessage(), e );
+			}
+			throw new IllegalStateException( "no node id available for time-ordered ids in " + directory );
+		}
+
+		/**
+		 * Open existing lock file or create it if none exists.
+		 * @return channel or null if the file was created or deleted concurrently.
+		 */
+		private static FileChannel open( Path file ) throws IOException {
+			try {
+				return FileChannel.open( file, StandardOpenOption.WRITE );
+
+			} catch( NoSuchFileException e ) {
+				try {
+					return FileChannel.open( file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE );
+
+				} catch( FileAlreadyExistsException e2 ) {
+					return null;
+				}
+			}
+		}
+
+		/**
+		 * Test whether the locked channel is the file of that name, i.e. the file
+		 * was not deleted by its prior holder before the lock was acquired.
+		 */
+		private static boolean owned( FileChannel ch, Path file, byte[] token ) throws IOException {
+			ch.truncate( 0 );
+			ch.write( ByteBuffer.wrap( token ), 0 );
+			try {
+				return Arrays.equals( Files.readAllBytes( file ), token );
+
+			} catch( NoSuchFileException e ) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Return radix ^ k or -1 on overflow.
+	 */
+	private static long pow( long radix, int k ) {
+		long p = 1;
+		for( int i=0; i < k; i++ ) {
+			if( p > Long.MAX_VALUE / radix ) {
+				return -1;
+			}
+			p *= radix;
 		}
-		return sb.toString();
+		return p;
 	}
 
 }
@@ -0,0 +1,207 @@
+package com.businessapp.logic;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ * Local class of an augmented interval tree holding half-open intervals
+ * [start, end) tagged with an id. The tree is a treap ordered by (start, id)
+ * with random priorities keeping it balanced in expectation. Each node carries
+ * the maximum end of its subtree such that subtrees that cannot overlap a
+ * query window are skipped:
+ *  - insert, remove and overlaps() take O(log n),
+ *  - overlapping() takes O(log n + k) for k reported intervals.
+ *
+ */
+class IntervalTree {
+
+	private static class Node {
+		final long start;
+		final long end;
+		final String id;
+		final int priority;
+		long maxEnd;
+		Node left;
+		Node right;
+
+		Node( long start, long end, String id ) {
+			this.start = start;
+			this.end = end;
+			this.id = id;
+			this.priority = ThreadLocalRandom.current().nextInt();
+			this.maxEnd = end;
+		}
+	}
+
+	private Node root = null;
+	private int size = 0;
+
+
+	/**
+	 * Insert interval.
+	 * @param start start of interval (inclusive).
+	 * @param end end of interval (exclusive).
+	 * @param id id associated with interval.
+	 */
+	void insert( long start, long end, String id ) {
+		root = insert( root, new Node( start, end, id ) );
+		size++;
+	}
+
+	/**
+	 * Remove interval with start and id.
+	 * @param start start of interval.
+	 * @param id id associated with interval.
+	 * @return true if interval was removed.
+	 */
+	boolean remove( long start, String id ) {
+		final int before = size;
+		root = remove( root, start, id );
+		return size < before;
+	}
+
+	/**
+	 * Test whether any interval overlaps window [from, to).
+	 * @param from start of window (inclusive).
+	 * @param to end of window (exclusive).
+	 * @return true if an interval overlaps the window.
+	 */
+	boolean overlaps( long from, long to ) {
+		Node n = root;
+		while( n != null ) {
+			if( n.start < to && n.end > from ) {
+				return true;
+			}
+			// left subtree can only overlap if some interval ends after from
+			n = n.left != null && n.left.maxEnd > from ? n.left : ( n.start < to ? n.right : null );
+		}
+		return false;
+	}
+
+	/**
+	 * Collect ids of intervals overlapping window [from, to).
+	 * @param from start of window (inclusive).
+	 * @param to end of window (exclusive).
+	 * @param ids list to which ids are added.
+	 */
+	void overlapping( long from, long to, List<String> ids ) {
+		overlapping( root, from, to, ids );
+	}
+
+	int size() {
+		return size;
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	private static int compare( long start1, String id1, long start2, String id2 ) {
+		int c = Long.compare( start1, start2 );
+		return c != 0 ? c : id1.compareTo( id2 );
+	}
+
+	private static void update( Node n ) {
+		long m = n.end;
+		if( n.left != null && n.left.maxEnd > m ) {
+			m = n.left.maxEnd;
+		}
+		if( n.right != null && n.right.maxEnd > m ) {
+			m = n.right.maxEnd;
+		}
+		n.maxEnd = m;
+	}
+
+	private static Node rotateRight( Node n ) {
+		Node l = n.left;
+		n.left = l.right;
+		l.right = n;
+		update( n );
+		update( l );
+		return l;
+	}
+
+	private static Node rotateLeft( Node n ) {
+		Node r = n.right;
+		n.right = r.left;
+		r.left = n;
+		update( n );
+		update( r );
+		return r;
+	}
+
+	private Node insert( Node n, Node x ) {
+		if( n == null ) {
+			return x;
+		}
+		if( compare( x.start, x.id, n.start, n.id ) < 0 ) {
+			n.left = insert( n.left, x );
+			if( n.left.priority > n.priority ) {
+				n = rotateRight( n );
+			}
+		} else {
+			n.right = insert( n.right, x );
+			if( n.right.priority > n.priority ) {
+				n = rotateLeft( n );
+			}
+		}
+		update( n );
+		return n;
+	}
+
+	private Node remove( Node n, long start, String id ) {
+		if( n == null ) {
+			return null;
+		}
+		int c = compare( start, id, n.start, n.id );
+		if( c < 0 ) {
+			n.left = remove( n.left, start, id );
+
+		} else if( c > 0 ) {
+			n.right = remove( n.right, start, id );
+
+		} else {
+			size--;
+			n = merge( n.left, n.right );
+			return n;
+		}
+		update( n );
+		return n;
+	}
+
+	/**
+	 * Merge two treaps where all keys of a are less than keys of b.
+	 */
+	private static Node merge( Node a, Node b ) {
+		if( a == null ) {
+			return b;
+		}
+		if( b == null ) {
+			return a;
+		}
+		if( a.priority > b.priority ) {
+			a.right = merge( a.right, b );
+			update( a );
+			return a;
+		}
+		b.left = merge( a, b.left );
+		update( b );
+		return b;
+	}
+
+	private static void overlapping( Node n, long from, long to, List<String> ids ) {
+		if( n == null || n.maxEnd <= from ) {
+			return;		// no interval in subtree ends after from
+		}
+		overlapping( n.left, from, to, ids );
+		if( n.start < to ) {
+			if( n.end > from ) {
+				ids.add( n.id );
+			}
+			overlapping( n.right, from, to, ids );	// right subtree starts at or after n.start
+		}
+	}
+
+}
@@ -63,6 +63,14 @@ public class Article implements EntityIntf {
 		setPrice( price );
 	}
 
+	/**
+	 * Public getter of the generator of Article ids, e.g. to install a collision check.
+	 * @return generator of Article ids.
+	 */
+	public static IDGenerator getIdGenerator() {
+		return IDG;
+	}
+
 
 	/*
 	 * Public getter/setter methods.
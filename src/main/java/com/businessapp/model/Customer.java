@@ -74,6 +74,14 @@ public class Customer implements EntityIntf {
 		this.status = CustomerStatus.ACTIVE;
 	}
 
+	/**
+	 * Public getter of the generator of Customer ids, e.g. to install a collision check.
+	 * @return generator of Customer ids.
+	 */
+	public static IDGenerator getIdGenerator() {
+		return IDG;
+	}
+
 
 	/*
 	 * Public getter/setter methods.
@@ -3,8 +3,11 @@ package com.businessapp.model;
 import java.io.Serializable;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -12,8 +15,16 @@ import java.util.TimeZone;
  * entered into the system attached to an Entity class such as Customer
  * or Article.
  * 
- * A Note consists of a timeStamp, a separator (comma) and noteText.
- * Example: "2018-04-02 10:16:24:868, This is a short note."
+ * A Note consists of a timeStamp, a separator (";; ") and noteText.
+ * Example: "2018-04-02 10:16:24.868;; This is a short note."
+ * 
+ * Time stamps are rendered in time zone GMT+01. Formatters are immutable
+ * java.time formatters, the externalized layout is formatted and parsed by
+ * hand without intermediate objects such that Notes can be created, loaded
+ * and saved from parallel threads. Time stamps that do not fit the layout,
+ * e.g. "2018-4-2 10:16:24.868" or day 31 of a 30-day month, and dates before
+ * the Gregorian calendar are parsed and formatted leniently as before by
+ * per-thread SimpleDateFormats.
  * 
  * @author Sven Graupner
  */
@@ -22,22 +33,44 @@ public class Note implements Serializable {
 
 	public static final String DefaultEntry = "New.";
 
+	public static final ZoneOffset TimeZone = ZoneOffset.ofHours( 1 );	// GMT+01
+
+	private static final String TimeStampPattern = "yyyy-MM-dd HH:mm:ss.SSS";
+	private static final String SimpleTimeStampPattern = "dd-MMM-yyyy, HH:mm";
+
+	public static final DateTimeFormatter TimeStampFormatter
+		// "2018-04-02 10:16:24.868"
+		= DateTimeFormatter.ofPattern( TimeStampPattern ).withZone( TimeZone );
+
+	public static final DateTimeFormatter SimpleTimeStampFormatter
+		// "02-Apr-2018, 10:16"
+		= DateTimeFormatter.ofPattern( SimpleTimeStampPattern ).withZone( TimeZone );
+
+	/**
+	 * @deprecated SimpleDateFormat is not thread-safe, use TimeStampFormatter.
+	 */
+	@Deprecated
 	public static final SimpleDateFormat df
-		// "2018-04-02 10:16:24:868"
-		= new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss.SSS" );
+		// "2018-04-02 10:16:24.868"
+		= legacyFormat( TimeStampPattern );
 
+	/**
+	 * @deprecated SimpleDateFormat is not thread-safe, use SimpleTimeStampFormatter.
+	 */
+	@Deprecated
 	public static final SimpleDateFormat df_simple
 		// "02-Apr-2018, 10:16"
-		= new SimpleDateFormat( "dd-MMM-yyyy, HH:mm" );
+		= legacyFormat( SimpleTimeStampPattern );
 
-	private static final String FieldSeparator = ";; ";
-	private static long lastTimeStamp = 0L;
+	private static final ThreadLocal<SimpleDateFormat> lenient = ThreadLocal.withInitial( () -> legacyFormat( TimeStampPattern ) );
+	private static final ThreadLocal<SimpleDateFormat> lenientSimple = ThreadLocal.withInitial( () -> legacyFormat( SimpleTimeStampPattern ) );
 
-	static {
-		// static initialization code to initialize time with proper time zone.
-		df.setTimeZone( TimeZone.getTimeZone( "GMT+01" ) );
-		df_simple.setTimeZone( df.getTimeZone() );
-	}
+	private static final String FieldSeparator = ";; ";
+	private static final int TimeStampLength = 23;		// length of "yyyy-MM-dd HH:mm:ss.SSS"
+	private static final long MillisPerDay = 24L * 60 * 60 * 1000;
+	private static final AtomicLong lastTimeStamp = new AtomicLong( 0L );
+	private static final long GregorianStart		// 1583-01-01, earlier dates are Julian dates of SimpleDateFormat
+		= daysFromCivil( 1583, 1, 1 ) * MillisPerDay - TimeZone.getTotalSeconds() * 1000L;
 
 	/*
 	 * Properties.
@@ -56,16 +89,40 @@ public class Note implements Serializable {
 
 	/**
 	 * Public constructor creating Note from externalized String.
-	 * Example noteStr: "2018-04-02 10:16:24:868, This is a text entry."
+	 * Example noteStr: "2018-04-02 10:16:24.868;; This is a text entry."
+	 * Strings without valid timeStamp are taken as text with a new timeStamp.
 	 * @param noteStr
 	 */
 	public Note( String noteStr ) {
-		Object[] parts = parselogStr( noteStr );
-		this.timeStamp = parts[0]==null? null : (Date)parts[0];
-		this.noteText = (String)parts[1];
-		if( this.timeStamp == null ) {
-			this.timeStamp = nextUniqueTimeStamp();
+		final long ts = parseTimeStamp( noteStr );
+		if( ts != Long.MIN_VALUE ) {
+			this.timeStamp = new Date( ts );
+			this.noteText = noteStr.substring( TimeStampLength + FieldSeparator.length() );
+			return;
+		}
+		final int sep = noteStr==null? -1 : noteStr.indexOf( FieldSeparator );
+		if( sep >= 0 ) {
+			try {
+				// time stamp that does not fit the layout, parsed leniently as before
+				this.timeStamp = lenient.get().parse( noteStr.substring( 0, sep ) );
+				this.noteText = noteStr.substring( sep + FieldSeparator.length() );
+				return;
+
+			} catch( ParseException e ) {
+			}
 		}
+		this.timeStamp = new Date( nextUniqueTimeStamp() );
+		this.noteText = noteStr;
+	}
+
+	/**
+	 * Public constructor creating Note from its parts, e.g. from a binary snapshot.
+	 * @param timeStamp timeStamp of Note in msec since epoch.
+	 * @param noteText text part of Note.
+	 */
+	public Note( long timeStamp, String noteText ) {
+		this.timeStamp = new Date( timeStamp );
+		this.noteText = noteText;
 	}
 
 
@@ -78,7 +135,18 @@ public class Note implements Serializable {
 	 * @return timeStamp part of Note rendered as String.
 	 */
 	public String getSimpleTimestamp() {
-		return df_simple.format( timeStamp );
+		if( timeStamp.getTime() < GregorianStart ) {
+			return lenientSimple.get().format( timeStamp );
+		}
+		return SimpleTimeStampFormatter.format( Instant.ofEpochMilli( timeStamp.getTime() ) );
+	}
+
+	/**
+	 * Get timeStamp part of Note.
+	 * @return timeStamp part of Note in msec since epoch.
+	 */
+	public long getTimeStamp() {
+		return timeStamp.getTime();
 	}
 
 	/**
@@ -98,11 +166,19 @@ public class Note implements Serializable {
 	}
 
 	/**
-	 * Externalize Note as String. Example: "2018-03-15 20:10:27.730, Customer 1234 created".
+	 * Externalize Note as String. Example: "2018-03-15 20:10:27.730;; Customer 1234 created".
 	 * @return Note as externalized String.
 	 */
 	public String externalize() {
-		return df.format( timeStamp ) + FieldSeparator + noteText;
+		final String text = noteText==null? "null" : noteText;
+		if( timeStamp.getTime() < GregorianStart ) {
+			return lenient.get().format( timeStamp ) + FieldSeparator + text;
+		}
+		final char[] buf = new char[ TimeStampLength + FieldSeparator.length() + text.length() ];
+		formatTimeStamp( timeStamp.getTime(), buf );
+		FieldSeparator.getChars( 0, FieldSeparator.length(), buf, TimeStampLength );
+		text.getChars( 0, text.length(), buf, TimeStampLength + FieldSeparator.length() );
+		return new String( buf );
 	}
 
 
@@ -111,43 +187,135 @@ public class Note implements Serializable {
 	 */
 
 	/**
-	 * Helper function to split an externalized "timestamp;noteStr"-string into
-	 * its parts that are separated by Separator.
+	 * Helper function that parses the timeStamp of an externalized
+	 * "yyyy-MM-dd HH:mm:ss.SSS;; text" string in time zone GMT+01.
 	 * @param noteStr input Note as externalized String.
-	 * @return Array of parts with types of Note properties.
+	 * @return timeStamp in msec since epoch or Long.MIN_VALUE if noteStr does not start with a timeStamp
+	 * and separator of that layout that is a valid date of the Gregorian calendar.
 	 */
-	private Object[] parselogStr( String noteStr ) {
-		Object[] res = new Object[] { null, null };
-		String[] spl = noteStr.split( FieldSeparator, 2 );	// return max 2 splits, allows ',' to be used in logLine
-		if( spl.length > 1 ) {
-			// two parts, try to parse date
-			try {
-				res[0] = df.parse( spl[ 0 ] );
-				res[1] = spl[ 1 ];
+	static long parseTimeStamp( String noteStr ) {
+		if( noteStr == null || noteStr.length() < TimeStampLength + FieldSeparator.length()
+				|| ! noteStr.startsWith( FieldSeparator, TimeStampLength )
+				|| noteStr.charAt( 4 ) != '-' || noteStr.charAt( 7 ) != '-' || noteStr.charAt( 10 ) != ' '
+				|| noteStr.charAt( 13 ) != ':' || noteStr.charAt( 16 ) != ':' || noteStr.charAt( 19 ) != '.' )
+		{
+			return Long.MIN_VALUE;
+		}
+		final int year = digits( noteStr, 0, 4 );
+		final int month = digits( noteStr, 5, 2 );
+		final int day = digits( noteStr, 8, 2 );
+		final int hour = digits( noteStr, 11, 2 );
+		final int minute = digits( noteStr, 14, 2 );
+		final int second = digits( noteStr, 17, 2 );
+		final int milli = digits( noteStr, 20, 3 );
+		if( year < 1583 || month < 1 || month > 12 || day < 1 || day > daysInMonth( year, month )
+				|| hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || milli < 0 )
+		{
+			return Long.MIN_VALUE;
+		}
+		final long millisOfDay = ( ( hour * 60L + minute ) * 60L + second ) * 1000L + milli;
+		return daysFromCivil( year, month, day ) * MillisPerDay + millisOfDay - TimeZone.getTotalSeconds() * 1000L;
+	}
 
-			} catch( ParseException e ) {
+	/**
+	 * Helper function that formats timeStamp as "yyyy-MM-dd HH:mm:ss.SSS" in
+	 * time zone GMT+01 into the first TimeStampLength chars of buf.
+	 */
+	static void formatTimeStamp( long timeStamp, char[] buf ) {
+		final long local = timeStamp + TimeZone.getTotalSeconds() * 1000L;
+		final long days = Math.floorDiv( local, MillisPerDay );
+		long millisOfDay = Math.floorMod( local, MillisPerDay );
+		// civil date from days since 1970-01-01 (proleptic Gregorian calendar)
+		final long z = days + 719468;
+		final long era = Math.floorDiv( z, 146097 );
+		final long doe = z - era * 146097;
+		final long yoe = ( doe - doe / 1460 + doe / 36524 - doe / 146096 ) / 365;
+		final long doy = doe - ( 365 * yoe + yoe / 4 - yoe / 100 );
+		final long mp = ( 5 * doy + 2 ) / 153;
+		final int day = (int)( doy - ( 153 * mp + 2 ) / 5 + 1 );
+		final int month = (int)( mp < 10? mp + 3 : mp - 9 );
+		final int year = (int)( yoe + era * 400 + ( month <= 2? 1 : 0 ) );
+		put( buf, 0, year, 4 );
+		buf[ 4 ] = '-';
+		put( buf, 5, month, 2 );
+		buf[ 7 ] = '-';
+		put( buf, 8, day, 2 );
+		buf[ 10 ] = ' ';
+		put( buf, 11, (int)( millisOfDay / 3600000 ), 2 );
+		buf[ 13 ] = ':';
+		put( buf, 14, (int)( millisOfDay / 60000 % 60 ), 2 );
+		buf[ 16 ] = ':';
+		put( buf, 17, (int)( millisOfDay / 1000 % 60 ), 2 );
+		buf[ 19 ] = '.';
+		put( buf, 20, (int)( millisOfDay % 1000 ), 3 );
+	}
+
+	/**
+	 * Return lenient SimpleDateFormat of pattern in time zone GMT+01.
+	 */
+	private static SimpleDateFormat legacyFormat( String pattern ) {
+		final SimpleDateFormat format = new SimpleDateFormat( pattern );
+		format.setTimeZone( java.util.TimeZone.getTimeZone( "GMT+01" ) );
+		return format;
+	}
+
+	/**
+	 * Helper function to generate a unique timeStamp that differs at least by 1 msec
+	 * from a prior call to nextUniqueTimeStamp(), also when called from parallel threads.
+	 * @return unique timeStamp in msec since epoch.
+	 */
+	private static long nextUniqueTimeStamp() {
+		while( true ) {
+			final long prior = lastTimeStamp.get();
+			final long now = System.currentTimeMillis();
+			final long next = now > prior? now : prior + 1;
+			if( lastTimeStamp.compareAndSet( prior, next ) ) {
+				return next;
 			}
 		}
-		if( res[1]==null ) {
-			res[1] = noteStr;
+	}
+
+	/**
+	 * Return value of n decimal digits at position i or -1 if a char is not a digit.
+	 */
+	private static int digits( String s, int i, int n ) {
+		int value = 0;
+		for( int k = i; k < i + n; k++ ) {
+			final char c = s.charAt( k );
+			if( c < '0' || c > '9' ) {
+				return -1;
+			}
+			value = value * 10 + ( c - '0' );
 		}
-		return res;
+		return value;
 	}
 
 	/**
-	 * Helper function to generate a unique timeStamp that differs at least by 1 msec
-	 * from a prior call to nextUniqueTimeStamp().
-	 * @return unique timeStamp as Date object.
-	 */
-	private Date nextUniqueTimeStamp() {
-		Date now = new Date();
-		long nowL = now.getTime();
-		if( nowL <= lastTimeStamp ) {
-			now = new Date( ++lastTimeStamp );
-		} else {
-			lastTimeStamp = nowL;
+	 * Write value as n decimal digits with leading zeros at position i.
+	 */
+	private static void put( char[] buf, int i, int value, int n ) {
+		for( int k = i + n - 1; k >= i; k--, value /= 10 ) {
+			buf[ k ] = (char)( '0' + value % 10 );
 		}
-		return now;
+	}
+
+	private static int daysInMonth( int year, int month ) {
+		if( month == 2 ) {
+			return ( year % 4 == 0 && ( year % 100 != 0 || year % 400 == 0 ) )? 29 : 28;
+		}
+		return ( month == 4 || month == 6 || month == 9 || month == 11 )? 30 : 31;
+	}
+
+	/**
+	 * Return days since 1970-01-01 of a civil date (proleptic Gregorian calendar).
+	 */
+	private static long daysFromCivil( int year, int month, int day ) {
+		final long y = month <= 2? year - 1 : year;
+		final long era = Math.floorDiv( y, 400 );
+		final long yoe = y - era * 400;
+		final long doy = ( 153 * ( month > 2? month - 3 : month + 9 ) + 2 ) / 5 + day - 1;
+		final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
 	}
 
 }
@@ -47,6 +47,14 @@ public class Reservation implements EntityIntf {
         this.date = date;
     }
 
+    /**
+     * Public getter of the generator of Reservation ids, e.g. to install a collision check.
+     * @return generator of Reservation ids.
+     */
+    public static IDGenerator getIdGenerator() {
+        return IDG;
+    }
+
     @Override
     public String getId() {
         return id;
@@ -74,7 +74,9 @@ public class CustomerJSONSerializer extends StdSerializer<Customer> {
             jgen.writeArrayFieldStart( Attr.notes.name() );
             // jgen.writeRaw( "\n" );
             for( final Note note : entity.getNotes() ) {
-                jgen.writeRaw( "\n\t" );
+                if( jgen.getPrettyPrinter() != null ) {
+                    jgen.writeRaw( "\n\t" );	// line break only in pretty-printed output
+                }
                 jgen.writeString( note.externalize() );
             }
             jgen.writeEndArray();
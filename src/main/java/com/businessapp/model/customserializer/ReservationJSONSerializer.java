@@ -64,7 +64,9 @@ public class ReservationJSONSerializer extends StdSerializer<Reservation> {
             jgen.writeArrayFieldStart( Attr.aids.name() );
             // jgen.writeRaw( "\n" );
             for( final String articleId : entity.getArticleIds() ) {
-                jgen.writeRaw( "\n\t" );
+                if( jgen.getPrettyPrinter() != null ) {
+                    jgen.writeRaw( "\n\t" );	// line break only in pretty-printed output
+                }
                 jgen.writeString( articleId );
             }
             jgen.writeEndArray();
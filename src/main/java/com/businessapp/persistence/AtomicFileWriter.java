@@ -0,0 +1,187 @@
+package com.businessapp.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.businessapp.persistence.PersistenceProviderFactory.FsyncPolicy;
+
+
+/**
+ * Local class that replaces files atomically. Content is written to a temporary
+ * file in the same directory, which is always forced to disk before it is moved
+ * over the target file with an atomic rename such that a crash never leaves a
+ * partially written file in place of the old one. Finally the directory is
+ * forced such that the rename survives a crash.
+ *
+ * Forcing directories and appended files follows the FsyncPolicy:
+ *  - ALWAYS: force on every write,
+ *  - BATCHED: force at most once per BatchInterval msec, writes in between
+ *    are forced by a deferred sync at the end of the interval,
+ *  - NEVER: leave flushing to the operating system.
+ *
+ */
+class AtomicFileWriter {
+
+	static final int WriteBufferSize = 256 * 1024;	// output buffer in front of file channel
+	static final long BatchInterval = 1000L;		// msec between forced writes with BATCHED policy
+
+	/*
+	 * Daemon thread that runs deferred syncs of the BATCHED policy.
+	 */
+	private static final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor( r -> {
+		Thread t = new Thread( r, AtomicFileWriter.class.getSimpleName() );
+		t.setDaemon( true );
+		return t;
+	});
+
+	private final FsyncPolicy policy;
+	private long lastSync;		// time of last forced write
+	private final LinkedHashSet<Path> deferred;		// files and directories to force at the end of the interval
+
+
+	/**
+	 * Functional interface of a writer that writes file content to an output stream.
+	 */
+	@FunctionalInterface
+	interface StreamWriterIntf {
+		void write( OutputStream out ) throws IOException;
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param policy policy when written files are forced to disk.
+	 */
+	AtomicFileWriter( FsyncPolicy policy ) {
+		this.policy = policy;
+		this.lastSync = 0L;
+		this.deferred = new LinkedHashSet<Path>();
+	}
+
+
+	/**
+	 * Atomically replace target file with content written by writer.
+	 * @param target file to replace.
+	 * @param writer writer of file content.
+	 * @throws IOException IOException thrown in case of IO failure, target file is unchanged.
+	 */
+	void write( Path target, StreamWriterIntf writer ) throws IOException {
+		final Path dir = target.toAbsolutePath().getParent();
+		final Path tmp = dir.resolve( "." + target.getFileName() + ".tmp" );
+		try {
+			try( FileChannel channel = FileChannel.open( tmp,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) )
+			{
+				OutputStream out = new BufferedOutputStream( Channels.newOutputStream( channel ), WriteBufferSize );
+				writer.write( new FilterOutputStream( out ) {
+					@Override
+					public void write( byte[] b, int off, int len ) throws IOException {
+						out.write( b, off, len );
+					}
+					@Override
+					public void close() throws IOException {
+						flush();	// channel is closed after it was forced
+					}
+				});
+				out.flush();
+				channel.force( true );		// content must be on disk before it replaces the old file
+			}
+
+			try {
+				Files.move( tmp, target, StandardCopyOption.ATOMIC_MOVE );
+
+			} catch( AtomicMoveNotSupportedException e ) {
+				Files.move( tmp, target, StandardCopyOption.REPLACE_EXISTING );
+			}
+
+			if( syncDue( dir ) ) {
+				force( dir );
+			}
+
+		} finally {
+			Files.deleteIfExists( tmp );
+		}
+	}
+
+
+	/**
+	 * Force file channel to disk according to the policy, e.g. after appending to a file.
+	 * @param channel channel to force.
+	 * @param path path of the file of the channel, forced later if the sync is deferred.
+	 * @throws IOException IOException thrown in case of IO failure.
+	 */
+	void sync( FileChannel channel, Path path ) throws IOException {
+		if( syncDue( path ) ) {
+			channel.force( false );
+		}
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Return true if path must be forced now. With BATCHED policy, a path that
+	 * is not forced now is forced by a deferred sync at the end of the interval.
+	 */
+	private synchronized boolean syncDue( Path path ) {
+		switch( policy ) {
+		case ALWAYS:
+			return true;
+
+		case BATCHED:
+			long now = System.currentTimeMillis();
+			if( now - lastSync >= BatchInterval ) {
+				lastSync = now;
+				return true;
+			}
+			if( deferred.isEmpty() ) {
+				syncer.schedule( this::syncDeferred, lastSync + BatchInterval - now, TimeUnit.MILLISECONDS );
+			}
+			deferred.add( path );
+			return false;
+
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Force files and directories whose sync was deferred.
+	 */
+	private void syncDeferred() {
+		final Path[] paths;
+		synchronized( this ) {
+			paths = deferred.toArray( new Path[ deferred.size() ] );
+			deferred.clear();
+			lastSync = System.currentTimeMillis();
+		}
+		for( Path path : paths ) {
+			force( path );
+		}
+	}
+
+	private void force( Path path ) {
+		try( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) ) {
+			channel.force( true );
+
+		} catch( IOException e ) {
+			// directories cannot be opened for sync on some platforms (e.g. Windows)
+		}
+	}
+
+}
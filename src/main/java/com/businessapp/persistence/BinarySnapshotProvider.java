@@ -0,0 +1,323 @@
+package com.businessapp.persistence;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.List;
+
+import com.businessapp.logic.LoggerProvider;
+import com.businessapp.model.Article;
+import com.businessapp.model.Customer;
+import com.businessapp.model.Customer.CustomerStatus;
+import com.businessapp.model.EntityIntf;
+import com.businessapp.model.Note;
+import com.businessapp.model.Reservation;
+import com.businessapp.model.Reservation.ReservationStatus;
+import com.businessapp.persistence.PersistenceProviderIntf.CollectorIntf;
+
+
+/**
+ * Local class that implements a compact binary snapshot format for fast cold
+ * start. Snapshots are written to "<path>.bin" and read with one bulk read
+ * into a heap buffer without intermediate string parsing. No mapping of the
+ * file is kept that could block replacing it (e.g. on Windows).
+ *
+ * Layout (big endian):
+ *  - header: magic "BAS1", entity type name, entity count,
+ *  - enum dictionary: number of constants followed by their names; records refer
+ *    to constants by dictionary index such that reordering constants in code does
+ *    not invalidate snapshots, records with constants removed from code are rejected,
+ *  - records: one per entity with fields in fixed order.
+ *
+ * Strings are encoded as varint length (0: null, n+1: n bytes) followed by UTF-8
+ * bytes, dates as epoch-millis (long). When no snapshot exists, entities are
+ * imported from the JSON provider, which remains the format for import and export.
+ *
+ */
+class BinarySnapshotProvider implements SerializationProviderIntf {
+	private static final LoggerProvider log = LoggerProvider.getLogger( BinarySnapshotProvider.class );
+
+	static final int Magic = 0x42415331;		// "BAS1"
+	static final long NoDate = Long.MIN_VALUE;
+
+	private final Class<? extends EntityIntf> clazz;
+	private final File file;
+	private final SerializationProviderIntf importer;	// reads entities when no snapshot exists, may be null
+	private final AtomicFileWriter fileWriter;
+
+	private byte[] scratch = new byte[ 256 ];	// decode buffer for strings
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path path to data, snapshot is kept in "<path>.bin".
+	 * @param clazz entity class, one of Customer, Article, Reservation.
+	 * @param importer provider to import entities from when no snapshot exists, may be null.
+	 */
+	BinarySnapshotProvider( String path, Class<? extends EntityIntf> clazz, SerializationProviderIntf importer ) {
+		this.clazz = clazz;
+		this.file = new File( path.replace( '\\', '/' ) + ".bin" );
+		this.importer = importer;
+		this.fileWriter = new AtomicFileWriter( PersistenceProviderFactory.getFsyncPolicy() );
+	}
+
+
+	/**
+	 * Serialize list of entities into a binary snapshot. The file is replaced atomically.
+	 *
+	 * @param list list of entities to serialize.
+	 * @exception throws IOException.
+	 */
+	@Override
+	public void writeSerialStream( List<? extends EntityIntf> list ) throws IOException {
+		File dir = file.getAbsoluteFile().getParentFile();
+		if( ! dir.exists() ) {
+			dir.mkdirs();	// create dataPath, if not present
+			log.info( dir + " created." );
+		}
+		fileWriter.write( file.toPath(), os -> {
+			DataOutputStream out = new DataOutputStream( new BufferedOutputStream( os ) );
+			out.writeInt( Magic );
+			writeString( out, clazz.getSimpleName() );
+			out.writeInt( list.size() );
+			Enum<?>[] dict = dictionary();
+			writeVarint( out, dict.length );
+			for( Enum<?> constant : dict ) {
+				writeString( out, constant.name() );
+			}
+			for( EntityIntf e : list ) {
+				writeRecord( out, e );
+			}
+			out.flush();
+		});
+		log.info( "saved (" + file + ")." );
+	}
+
+
+	/**
+	 * Deserialize binary snapshot into entities read from a heap buffer.
+	 * Entities are imported from the JSON provider if no snapshot exists.
+	 *
+	 * @param collector functional interface to invoke caller passing a deserialized entity.
+	 * @exception throws IOException.
+	 */
+	@Override
+	public void readSerialStream( CollectorIntf collector ) throws IOException {
+		if( ! file.exists() ) {
+			if( importer != null ) {
+				log.info( "no snapshot (" + file + "), importing." );
+				importer.readSerialStream( collector );
+			}
+			return;
+		}
+		try( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+			if( channel.size() > Integer.MAX_VALUE ) {
+				throw new IOException( "binary snapshot too large: " + file );
+			}
+			ByteBuffer buf = ByteBuffer.allocate( (int)channel.size() );
+			while( buf.hasRemaining() && channel.read( buf ) >= 0 ) {
+				// read entire file
+			}
+			buf.flip();
+			if( buf.remaining() == 0 ) {
+				return;		// empty file yields empty repository
+			}
+			if( buf.getInt() != Magic ) {
+				throw new IOException( "no binary snapshot: " + file );
+			}
+			String type = readString( buf );
+			if( ! clazz.getSimpleName().equals( type ) ) {
+				throw new IOException( "snapshot of " + type + " cannot be read as " + clazz.getSimpleName() + ": " + file );
+			}
+			int count = buf.getInt();
+			Enum<?>[] constants = dictionary();
+			Enum<?>[] dict = new Enum<?>[ readVarint( buf ) ];
+			String[] names = new String[ dict.length ];
+			for( int i=0; i < dict.length; i++ ) {
+				names[ i ] = readString( buf );
+				for( Enum<?> constant : constants ) {
+					if( constant.name().equals( names[ i ] ) ) {
+						dict[ i ] = constant;
+					}
+				}
+			}
+			for( int i=0; i < count; i++ ) {
+				collector.collect( readRecord( buf, dict, names ) );
+			}
+			log.info( "loaded " + count + " entities (" + file + ")." );
+
+		} catch( BufferUnderflowException e ) {
+			throw new IOException( "truncated binary snapshot: " + file );
+		}
+	}
+
+	/**
+	 * Test whether a snapshot or data to import exists.
+	 */
+	@Override
+	public boolean exists() {
+		return file.exists() || ( importer != null && importer.exists() );
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	private Enum<?>[] dictionary() throws IOException {
+		if( clazz == Customer.class ) {
+			return CustomerStatus.values();
+		}
+		if( clazz == Reservation.class ) {
+			return ReservationStatus.values();
+		}
+		if( clazz == Article.class ) {
+			return new Enum<?>[ 0 ];
+		}
+		throw new IOException( "binary snapshot not supported for " + clazz.getName() );
+	}
+
+	private void writeRecord( DataOutputStream out, EntityIntf entity ) throws IOException {
+		if( entity instanceof Customer ) {
+			Customer c = (Customer)entity;
+			writeString( out, c.getId() );
+			writeString( out, c.getFirstName() );
+			writeString( out, c.getName() );
+			writeEnum( out, c.getStatus() );
+			writeVarint( out, c.getContacts().size() );
+			for( String contact : c.getContacts() ) {
+				writeString( out, contact );
+			}
+			writeVarint( out, c.getNotes().size() );
+			for( Note note : c.getNotes() ) {
+				out.writeLong( note.getTimeStamp() );
+				writeString( out, note.getNoteText() );
+			}
+
+		} else if( entity instanceof Article ) {
+			Article a = (Article)entity;
+			writeString( out, a.getId() );
+			writeString( out, a.getName() );
+			writeString( out, a.getShortName() );
+			out.writeDouble( a.getPrice() );
+
+		} else if( entity instanceof Reservation ) {
+			Reservation r = (Reservation)entity;
+			writeString( out, r.getId() );
+			writeString( out, r.getCustomerId() );
+			out.writeLong( r.getDate()==null? NoDate : r.getDate().getTime() );
+			writeEnum( out, r.getStatus() );
+			writeVarint( out, r.getArticleIds().size() );
+			for( String aid : r.getArticleIds() ) {
+				writeString( out, aid );
+			}
+
+		} else {
+			throw new IOException( "binary snapshot not supported for " + entity.getClass().getName() );
+		}
+	}
+
+	private EntityIntf readRecord( ByteBuffer buf, Enum<?>[] dict, String[] names ) throws IOException {
+		if( clazz == Customer.class ) {
+			Customer c = new Customer( readString( buf ), readString( buf ), readString( buf ) );
+			CustomerStatus status = (CustomerStatus)readEnum( buf, dict, names );
+			c.setStatus( status==null? CustomerStatus.ACTIVE : status );
+			for( int n = readVarint( buf ); n > 0; n-- ) {
+				c.getContacts().add( readString( buf ) );
+			}
+			c.getNotes().clear();		// drop note added by constructor, stored notes are restored
+			for( int notes = readVarint( buf ); notes > 0; notes-- ) {
+				long timeStamp = buf.getLong();
+				c.getNotes().add( new Note( timeStamp, readString( buf ) ) );
+			}
+			return c;
+		}
+		if( clazz == Article.class ) {
+			return new Article( readString( buf ), readString( buf ), readString( buf ), buf.getDouble() );
+		}
+		String id = readString( buf );
+		String cid = readString( buf );
+		long date = buf.getLong();
+		Reservation r = new Reservation( id, cid, date==NoDate? null : new Date( date ) );
+		ReservationStatus status = (ReservationStatus)readEnum( buf, dict, names );
+		r.setStatus( status==null? ReservationStatus.ACTIVE : status );
+		for( int n = readVarint( buf ); n > 0; n-- ) {
+			r.setArticle( readString( buf ) );
+		}
+		return r;
+	}
+
+	private void writeEnum( DataOutputStream out, Enum<?> value ) throws IOException {
+		writeVarint( out, value==null? 0 : value.ordinal() + 1 );
+	}
+
+	/**
+	 * Read enum constant by dictionary index, 0 for null.
+	 * @throws IOException if index is invalid or constant no longer exists in code.
+	 */
+	private Enum<?> readEnum( ByteBuffer buf, Enum<?>[] dict, String[] names ) throws IOException {
+		int i = readVarint( buf );
+		if( i < 0 || i > dict.length ) {
+			throw new IOException( "invalid enum index " + i + ": " + file );
+		}
+		if( i > 0 && dict[ i - 1 ] == null ) {
+			throw new IOException( "unknown enum constant \"" + names[ i - 1 ] + "\" in " + file );
+		}
+		return i==0? null : dict[ i - 1 ];
+	}
+
+	private void writeString( DataOutputStream out, String s ) throws IOException {
+		if( s == null ) {
+			writeVarint( out, 0 );
+
+		} else {
+			byte[] bytes = s.getBytes( StandardCharsets.UTF_8 );
+			writeVarint( out, bytes.length + 1 );
+			out.write( bytes );
+		}
+	}
+
+	private String readString( ByteBuffer buf ) throws IOException {
+		int len = readVarint( buf ) - 1;
+		if( len < 0 ) {
+			return null;
+		}
+		if( len > buf.remaining() ) {
+			throw new IOException( "truncated binary snapshot: " + file );
+		}
+		if( len > scratch.length ) {
+			scratch = new byte[ Math.max( len, scratch.length * 2 ) ];
+		}
+		buf.get( scratch, 0, len );
+		return new String( scratch, 0, len, StandardCharsets.UTF_8 );
+	}
+
+	private static void writeVarint( DataOutputStream out, int value ) throws IOException {
+		while( ( value & ~0x7F ) != 0 ) {
+			out.writeByte( ( value & 0x7F ) | 0x80 );
+			value >>>= 7;
+		}
+		out.writeByte( value );
+	}
+
+	private static int readVarint( ByteBuffer buf ) throws IOException {
+		int value = 0;
+		for( int shift = 0; shift < 32; shift += 7 ) {
+			byte b = buf.get();
+			value |= ( b & 0x7F ) << shift;
+			if( ( b & 0x80 ) == 0 ) {
+				return value;
+			}
+		}
+		throw new IOException( "malformed varint" );
+	}
+
+}
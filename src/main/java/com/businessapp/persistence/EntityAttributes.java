@@ -0,0 +1,107 @@
+package com.businessapp.persistence;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.function.Function;
+
+import com.businessapp.model.Article;
+import com.businessapp.model.Customer;
+import com.businessapp.model.EntityIntf;
+import com.businessapp.model.Reservation;
+
+
+/**
+ * Public class that describes queryable attributes of entity types. Attribute
+ * values are returned in normalized form (enums as names, dates as epoch millis)
+ * such that they can be compared with Query conditions and stored in typed
+ * database columns.
+ *
+ */
+public class EntityAttributes {
+
+	/**
+	 * Queryable attribute of an entity type.
+	 */
+	static class Attribute {
+		final String name;			// attribute name used in queries, e.g. "short_name"
+		final String column;		// database column name
+		final String sqlType;		// database column type, null if column is predefined
+		final Function<EntityIntf,Object> value;
+
+		Attribute( String name, String column, String sqlType, Function<EntityIntf,Object> value ) {
+			this.name = name;
+			this.column = column;
+			this.sqlType = sqlType;
+			this.value = value;
+		}
+	}
+
+	private static final HashMap<Class<?>,LinkedHashMap<String,Attribute>> attributes
+		= new HashMap<Class<?>,LinkedHashMap<String,Attribute>>();
+
+	static {
+		add( Customer.class, "id", "ID", null, e -> e.getId() );
+		add( Customer.class, "firstname", "FIRSTNAME", "VARCHAR(255)", e -> ((Customer)e).getFirstName() );
+		add( Customer.class, "name", "NAME", "VARCHAR(255)", e -> ((Customer)e).getName() );
+		add( Customer.class, "status", "STATUS", "VARCHAR(32)", e -> Query.normalize( ((Customer)e).getStatus() ) );
+
+		add( Article.class, "id", "ID", null, e -> e.getId() );
+		add( Article.class, "name", "NAME", "VARCHAR(255)", e -> ((Article)e).getName() );
+		add( Article.class, "short_name", "SHORT_NAME", "VARCHAR(255)", e -> ((Article)e).getShortName() );
+		add( Article.class, "price", "PRICE", "DOUBLE", e -> ((Article)e).getPrice() );
+
+		add( Reservation.class, "id", "ID", null, e -> e.getId() );
+		add( Reservation.class, "customerId", "CID", "VARCHAR(64)", e -> ((Reservation)e).getCustomerId() );
+		add( Reservation.class, "date", "DATE_TS", "BIGINT", e -> Query.normalize( ((Reservation)e).getDate() ) );
+		add( Reservation.class, "status", "STATUS", "VARCHAR(32)", e -> Query.normalize( ((Reservation)e).getStatus() ) );
+	}
+
+
+	/**
+	 * Test whether entity type has a queryable attribute.
+	 * @param clazz entity type.
+	 * @param name attribute name.
+	 * @return true if attribute exists.
+	 */
+	public static boolean has( Class<?> clazz, String name ) {
+		return attribute( clazz, name ) != null;
+	}
+
+	/**
+	 * Return normalized value of entity attribute.
+	 * @param entity entity.
+	 * @param name attribute name.
+	 * @return normalized attribute value, may be null.
+	 * @throws IllegalArgumentException if entity type has no such attribute.
+	 */
+	public static Object get( EntityIntf entity, String name ) {
+		final Attribute a = attribute( entity.getClass(), name );
+		if( a == null ) {
+			throw new IllegalArgumentException( "no attribute \"" + name + "\" in " + entity.getClass().getSimpleName() );
+		}
+		return a.value.apply( entity );
+	}
+
+
+	/*
+	 * Package-private methods.
+	 */
+
+	static Attribute attribute( Class<?> clazz, String name ) {
+		final LinkedHashMap<String,Attribute> m = attributes.get( clazz );
+		return m==null? null : m.get( name );
+	}
+
+	static Collection<Attribute> attributes( Class<?> clazz ) {
+		final LinkedHashMap<String,Attribute> m = attributes.get( clazz );
+		return m==null? Collections.<Attribute>emptyList() : m.values();
+	}
+
+	private static void add( Class<?> clazz, String name, String column, String sqlType, Function<EntityIntf,Object> value ) {
+		attributes.computeIfAbsent( clazz, k -> new LinkedHashMap<String,Attribute>() )
+			.put( name, new Attribute( name, column, sqlType, value ) );
+	}
+
+}
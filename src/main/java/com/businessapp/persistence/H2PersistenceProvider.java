@@ -0,0 +1,543 @@
+package com.businessapp.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.businessapp.logic.LoggerProvider;
+import com.businessapp.model.EntityIntf;
+
+
+/**
+ * Local class that implements a persistence provider based on an embedded H2
+ * database in file mode. Each entity type is stored in its own table with
+ * columns:
+ *  - ID: entity id (primary key),
+ *  - POS: insertion order,
+ *  - DATA: entity serialized as JSON,
+ *  - typed columns of entity attributes (see EntityAttributes), e.g. NAME,
+ *    STATUS, CID, that can be used in query predicates.
+ *
+ * Create, update and delete operations are mapped to row-level statements that
+ * are batched and executed in one JDBC transaction on commit(). Selectors of
+ * read( selector, collector ) are parsed into queries (see Query.parse()), e.g.
+ * "status = ACTIVE", and never concatenated into SQL. Queries are translated into parameterized SQL with conditions, ORDER BY, OFFSET
+ * and FETCH such that only selected rows are de-serialized.
+ *
+ * When rows cannot be read by readAll(), the failure is passed to the caller and the provider
+ * becomes read-only such that the table is not overwritten.
+ *
+ * The H2 JDBC driver is loaded at run-time (runtime dependency com.h2database:h2).
+ *
+ */
+class H2PersistenceProvider implements PersistenceProviderIntf {
+	private static final LoggerProvider log = LoggerProvider.getLogger( H2PersistenceProvider.class );
+
+	static final String DbName = "businessapp";		// database file in data directory
+
+	enum Op { create, update, delete };
+
+	private final Class<? extends EntityIntf> clazz;
+	private final String url;
+	private final String table;
+	private final List<EntityAttributes.Attribute> cols;	// typed columns
+	private final ObjectMapper mapper;
+
+	private Connection connection;
+	private long nextPos;				// insertion order of next created row
+	private boolean tableExisted;		// true if table existed before it was connected
+	private volatile boolean readOnly;	// true after rows could not be read
+
+	/*
+	 * Operations buffered in a transaction between prepare() and commit(), null outside a transaction.
+	 */
+	private List<Object[]> pending;
+	private boolean pendingClear;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param path path to data, database file is kept in the same directory.
+	 * @param clazz entity class, determines table and needed for de-serialization.
+	 */
+	H2PersistenceProvider( String path, Class<? extends EntityIntf> clazz ) {
+		this.clazz = clazz;
+		path = path.replace( '\\', '/' );
+		String dirPath = path.substring( 0, path.lastIndexOf( "/" ) + 1 );
+		this.url = "jdbc:h2:file:" + new File( dirPath + DbName ).getAbsolutePath().replace( '\\', '/' );
+		this.table = clazz.getSimpleName().toUpperCase();
+		this.cols = new ArrayList<EntityAttributes.Attribute>();
+		for( EntityAttributes.Attribute a : EntityAttributes.attributes( clazz ) ) {
+			if( a.sqlType != null ) {
+				cols.add( a );
+			}
+		}
+		this.mapper = new ObjectMapper();
+		this.connection = null;
+		this.pending = null;
+		this.pendingClear = false;
+	}
+
+
+	/**
+	 * Basic lifecycle operations inherited from ManagedComponentIntf.
+	 */
+	@Override
+	public void start() {
+		connection();
+	}
+
+	@Override
+	public void stop() {
+		if( connection != null ) {
+			try {
+				connection.close();
+
+			} catch( SQLException e ) {
+				log.error( "closing " + url + " failed: " + e.getMessage(), e );
+			}
+			connection = null;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return this.getClass().getSimpleName() + " for " + table;
+	}
+
+
+	/**
+	 * Begin a transaction.
+	 * @param entityList list of entities affected by the transaction.
+	 */
+	@Override
+	public void prepare( List<? extends EntityIntf> entityList ) {
+		this.pending = new ArrayList<Object[]>();
+		this.pendingClear = false;
+	}
+
+
+	/**
+	 * Commit transaction executing buffered operations as batched statements
+	 * in one JDBC transaction.
+	 * @return true if transaction was committed, false if it was rolled back.
+	 */
+	@Override
+	public boolean commit() {
+		boolean committed = true;
+		if( pending != null && ( pendingClear || pending.size() > 0 ) ) {
+			committed = execute( pendingClear, pending );
+		}
+		rollback();		// reset transaction state
+		return committed;
+	}
+
+
+	/**
+	 * Roll back transaction discarding buffered operations.
+	 */
+	@Override
+	public void rollback() {
+		this.pending = null;
+		this.pendingClear = false;
+	}
+
+
+	/**
+	 * C - Create new entity in underlying persistence provider.
+	 * @param entity entity to be created.
+	 */
+	@Override
+	public void create( EntityIntf entity ) {
+		record( Op.create, entity );
+	}
+
+
+	/**
+	 * R - Read operations from a persistence provider are initiated by
+	 * invoking read methods. Entities collected from the persistence
+	 * provider are delivered by invoking the collect( entity );
+	 * callback.
+	 *
+	 * @param selector selector parsed into query conditions (see Query.parse()),
+	 * e.g. "status = ACTIVE and name ^= 'Mc'", all entities are read if selector
+	 * is null or empty. Values are bound as parameters, never concatenated into SQL.
+	 * @throws IllegalArgumentException if the selector is malformed.
+	 * @param collector functional interface that is called from the
+	 * persistence provider for each collected entity.
+	 *
+	 */
+	@Override
+	public void read( String selector, CollectorIntf collector ) {
+		query( Query.parse( selector ), collector );
+	}
+
+	@Override
+	public void readAll( CollectorIntf collector ) {
+		try {
+			select( "SELECT DATA FROM " + table + " ORDER BY POS", Collections.emptyList(), collector );
+
+		} catch( UncheckedIOException e ) {
+			readOnly = true;	// do not overwrite rows that could not be read
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean exists() {
+		connected();
+		return tableExisted;
+	}
+
+	/**
+	 * Read entities selected by query. Conditions are translated into SQL
+	 * predicates over the typed columns with bound parameters, sorting, offset
+	 * and limit into ORDER BY, OFFSET and FETCH clauses.
+	 * @throws IllegalArgumentException if the query refers to an unknown attribute.
+	 */
+	@Override
+	public void query( Query query, CollectorIntf collector ) {
+		final List<Object> params = new ArrayList<Object>();
+		final StringBuffer sql = new StringBuffer( "SELECT DATA FROM " + table );
+		String sep = " WHERE ";
+		for( Query.Condition c : query.getConditions() ) {
+			sql.append( sep ).append( predicate( column( c.getField() ), c, params ) );
+			sep = " AND ";
+		}
+		if( query.getSortField() == null ) {
+			sql.append( " ORDER BY POS" );
+
+		} else {
+			sql.append( " ORDER BY " ).append( column( query.getSortField() ) )
+				.append( query.isDescending()? " DESC NULLS LAST" : " ASC NULLS FIRST" ).append( ", ID" );
+		}
+		if( query.getOffset() > 0 ) {
+			sql.append( " OFFSET ? ROWS" );
+			params.add( query.getOffset() );
+		}
+		if( query.getLimit() != Query.NoLimit ) {
+			sql.append( " FETCH FIRST ? ROWS ONLY" );
+			params.add( query.getLimit() );
+		}
+		select( sql.toString(), params, collector );
+	}
+
+
+	/**
+	 * U - Update operations are used to update entities by the persistence
+	 * provider.
+	 *
+	 * @param entity entity to be updated by persistence provider,
+	 */
+	@Override
+	public void update( EntityIntf entity ) {
+		record( Op.update, entity );
+	}
+
+	@Override
+	public void updateAll( List<? extends EntityIntf> entityList ) {
+		List<Object[]> ops = new ArrayList<Object[]>( entityList.size() );
+		for( EntityIntf e : entityList ) {
+			ops.add( new Object[] { Op.create, e } );
+		}
+		execute( true, ops );
+	}
+
+
+	/**
+	 * D - Delete operations are used to delete entities by the persistence
+	 * provider.
+	 *
+	 * @param entity entity to be updated by persistence provider,
+	 */
+	@Override
+	public void delete( EntityIntf entity ) {
+		record( Op.delete, entity );
+	}
+
+	@Override
+	public void deleteAll() {
+		if( pending != null ) {
+			pending.clear();
+			pendingClear = true;
+
+		} else {
+			execute( true, Collections.<Object[]>emptyList() );
+		}
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	private void record( Op op, EntityIntf entity ) {
+		Object[] o = new Object[] { op, entity };
+		if( pending != null ) {
+			pending.add( o );
+
+		} else {
+			execute( false, Arrays.<Object[]>asList( o ) );
+		}
+	}
+
+	/**
+	 * Return open connection, connect and create table if needed.
+	 */
+	private Connection connection() {
+		if( connection == null ) {
+			try {
+				connection = DriverManager.getConnection( url, "sa", "" );
+				try( ResultSet rs = connection.getMetaData().getTables( null, null, table, null ) ) {
+					tableExisted = rs.next();
+				}
+				StringBuffer ddl = new StringBuffer( "CREATE TABLE IF NOT EXISTS " + table
+						+ " ( ID VARCHAR(64) PRIMARY KEY, POS BIGINT NOT NULL" );
+				for( EntityAttributes.Attribute c : cols ) {
+					ddl.append( ", " ).append( c.column ).append( " " ).append( c.sqlType );
+				}
+				ddl.append( ", DATA CLOB )" );
+				try( Statement st = connection.createStatement() ) {
+					st.execute( ddl.toString() );
+					for( EntityAttributes.Attribute c : cols ) {
+						st.execute( "CREATE INDEX IF NOT EXISTS IDX_" + table + "_" + c.column
+								+ " ON " + table + "(" + c.column + ")" );
+					}
+					try( ResultSet rs = st.executeQuery( "SELECT COALESCE(MAX(POS),-1) FROM " + table ) ) {
+						nextPos = rs.next()? rs.getLong( 1 ) + 1 : 0L;
+					}
+				}
+				log.info( "connected (" + url + ", " + table + ")." );
+
+			} catch( SQLException e ) {
+				log.error( "connecting " + url + " failed: " + e.getMessage(), e );
+				connection = null;
+			}
+		}
+		return connection;
+	}
+
+	/**
+	 * Return open connection.
+	 * @throws UncheckedIOException if database cannot be connected.
+	 */
+	private Connection connected() {
+		Connection conn = connection();
+		if( conn == null ) {
+			throw new UncheckedIOException( new IOException( "database not connected: " + url ) );
+		}
+		return conn;
+	}
+
+	private void select( String sql, List<?> params, CollectorIntf collector ) {
+		Connection conn = connected();
+		try( PreparedStatement st = conn.prepareStatement( sql ) ) {
+			for( int i=0; i < params.size(); i++ ) {
+				st.setObject( i + 1, params.get( i ) );
+			}
+			try( ResultSet rs = st.executeQuery() ) {
+				int count = 0;
+				while( rs.next() ) {
+					collector.collect( mapper.readValue( rs.getString( 1 ), clazz ) );
+					count++;
+				}
+				log.info( "loaded " + count + " rows (" + table + ")." );
+			}
+
+		} catch( SQLException | IOException e ) {
+			log.error( "query failed (" + sql + "): " + e.getMessage(), e );
+			throw new UncheckedIOException( new IOException( "rows could not be read (" + table + "): " + e.getMessage(), e ) );
+		}
+	}
+
+	/**
+	 * Return column of query attribute.
+	 */
+	private String column( String field ) {
+		EntityAttributes.Attribute a = EntityAttributes.attribute( clazz, field );
+		if( a == null ) {
+			throw new IllegalArgumentException( "no attribute \"" + field + "\" in " + clazz.getSimpleName() );
+		}
+		return a.column;
+	}
+
+	/**
+	 * Return SQL predicate of condition with the same semantics as Query.Condition.test(),
+	 * values are added to params.
+	 */
+	private static String predicate( String column, Query.Condition c, List<Object> params ) {
+		final Object value = c.getValue();
+		if( value == null ) {
+			switch( c.getOp() ) {
+			case eq: return column + " IS NULL";
+			case ne: return column + " IS NOT NULL";
+			default: return "FALSE";
+			}
+		}
+		if( c.getOp() == Query.Op.prefix ) {
+			params.add( value.toString().replace( "\\", "\\\\" ).replace( "%", "\\%" ).replace( "_", "\\_" ) + "%" );
+			return column + " LIKE ? ESCAPE '\\'";
+		}
+		params.add( value );
+		switch( c.getOp() ) {
+		case ne: return "(" + column + " <> ? OR " + column + " IS NULL)";
+		case lt: return column + " < ?";
+		case le: return column + " <= ?";
+		case gt: return column + " > ?";
+		case ge: return column + " >= ?";
+		default: return column + " = ?";
+		}
+	}
+
+	/**
+	 * Execute operations as batched statements in one JDBC transaction. Runs of
+	 * operations of the same kind are sent as one batch preserving their order.
+	 * @return true if transaction was committed, false if it was rolled back.
+	 */
+	private boolean execute( boolean clear, List<Object[]> ops ) {
+		Connection conn = connection();
+		if( conn == null ) {
+			return false;
+		}
+		if( readOnly ) {
+			log.error( "transaction refused, rows could not be read and are not overwritten (" + table + ").", null );
+			return false;
+		}
+		final long pos0 = nextPos;
+		StringBuffer colNames = new StringBuffer();
+		StringBuffer colParams = new StringBuffer();
+		StringBuffer colSets = new StringBuffer();
+		for( EntityAttributes.Attribute c : cols ) {
+			colNames.append( ", " ).append( c.column );
+			colParams.append( ", ?" );
+			colSets.append( c.column ).append( "=?, " );
+		}
+		try {
+			conn.setAutoCommit( false );
+			if( clear ) {
+				try( Statement st = conn.createStatement() ) {
+					st.executeUpdate( "DELETE FROM " + table );
+				}
+			}
+			try( PreparedStatement insert = conn.prepareStatement( "MERGE INTO " + table
+						+ " (ID, POS" + colNames + ", DATA) KEY(ID) VALUES (?, ?" + colParams + ", ?)" );
+				 PreparedStatement update = conn.prepareStatement( "UPDATE " + table
+						+ " SET " + colSets + "DATA=? WHERE ID=?" );
+				 PreparedStatement delete = conn.prepareStatement( "DELETE FROM " + table + " WHERE ID=?" ) )
+			{
+				List<EntityIntf> updated = new ArrayList<EntityIntf>();
+				Op batchOp = null;
+				for( Object[] op : ops ) {
+					if( op[0] != batchOp ) {
+						executeBatch( batchOp, insert, update, delete, updated );
+						batchOp = (Op)op[0];
+					}
+					EntityIntf e = (EntityIntf)op[1];
+					switch( batchOp ) {
+					case create:
+						bindInsert( insert, e );
+						break;
+
+					case update:
+						int i = 1;
+						for( EntityAttributes.Attribute c : cols ) {
+							update.setObject( i++, c.value.apply( e ) );
+						}
+						update.setString( i++, mapper.writeValueAsString( e ) );
+						update.setString( i++, e.getId() );
+						update.addBatch();
+						updated.add( e );
+						break;
+
+					case delete:
+						delete.setString( 1, e.getId() );
+						delete.addBatch();
+						break;
+					}
+				}
+				executeBatch( batchOp, insert, update, delete, updated );
+			}
+			conn.commit();
+			return true;
+
+		} catch( SQLException | IOException e ) {
+			log.error( "transaction rolled back (" + table + "): " + e.getMessage(), e );
+			nextPos = pos0;
+			try {
+				conn.rollback();
+
+			} catch( SQLException e2 ) {
+				log.error( "rollback failed (" + table + "): " + e2.getMessage(), e2 );
+			}
+			return false;
+
+		} finally {
+			try {
+				conn.setAutoCommit( true );
+
+			} catch( SQLException e ) {
+				log.error( "resetting auto-commit failed (" + table + "): " + e.getMessage(), e );
+			}
+		}
+	}
+
+	/**
+	 * Execute batch of pending statements. Updated entities without a row are inserted.
+	 */
+	private void executeBatch( Op op, PreparedStatement insert, PreparedStatement update,
+			PreparedStatement delete, List<EntityIntf> updated ) throws SQLException, IOException
+	{
+		if( op == null ) {
+			return;
+		}
+		switch( op ) {
+		case create:
+			insert.executeBatch();
+			break;
+
+		case update:
+			int[] counts = update.executeBatch();
+			boolean missing = false;
+			for( int k=0; k < counts.length; k++ ) {
+				if( counts[ k ] == 0 ) {
+					bindInsert( insert, updated.get( k ) );
+					missing = true;
+				}
+			}
+			if( missing ) {
+				insert.executeBatch();
+			}
+			updated.clear();
+			break;
+
+		case delete:
+			delete.executeBatch();
+			break;
+		}
+	}
+
+	private void bindInsert( PreparedStatement insert, EntityIntf e ) throws SQLException, IOException {
+		int i = 1;
+		insert.setString( i++, e.getId() );
+		insert.setLong( i++, nextPos++ );
+		for( EntityAttributes.Attribute c : cols ) {
+			insert.setObject( i++, c.value.apply( e ) );
+		}
+		insert.setString( i++, mapper.writeValueAsString( e ) );
+		insert.addBatch();
+	}
+
+}
@@ -5,9 +5,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.List;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import com.businessapp.logic.LoggerProvider;
 import com.businessapp.model.EntityIntf;
@@ -26,18 +30,33 @@ class JSONPersistenceProvider implements SerializationProviderIntf {
     private final Class<? extends EntityIntf> clazz;
     private final String dirPath;
     private final String fileName;
+    private final boolean pretty;
 
     private final ObjectMapper mapper;
+    private final ObjectWriter writer;		// writer configuration reused for each save
+    private final AtomicFileWriter fileWriter;
 
 
     /**
-     * Constructor.
+     * Constructor of provider that writes compact JSON.
      *
      * @param path path to JSON file.
      * @param clazz entity class needed for de-serialization.
      */
     JSONPersistenceProvider( String path, Class<? extends EntityIntf> clazz ) {
+        this( path, clazz, false );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param path path to JSON file.
+     * @param clazz entity class needed for de-serialization.
+     * @param pretty if true, JSON is written pretty-printed (e.g. for export).
+     */
+    JSONPersistenceProvider( String path, Class<? extends EntityIntf> clazz, boolean pretty ) {
         this.clazz = clazz;
+        this.pretty = pretty;
         path = path.replace( '\\', '/' );
         int i2 = path.lastIndexOf( "/" ) + 1;
         this.dirPath = path.substring( 0, i2 );
@@ -52,12 +71,16 @@ class JSONPersistenceProvider implements SerializationProviderIntf {
         // - SimpleModule module = new SimpleModule();
         // - module.addSerializer( Customer.class, new CustomerJSONSerializer());
         // - mapper.registerModule(module);
+        this.writer = pretty? mapper.writerWithDefaultPrettyPrinter() : mapper.writer();
+        this.fileWriter = new AtomicFileWriter( PersistenceProviderFactory.getFsyncPolicy() );
     }
 
 
     /**
      * Serialize list of entities into serial JSON stream. The full object
-     * tree is serialized.
+     * tree is serialized. Entities are streamed through a JSON generator into
+     * a buffered file channel, compact unless the provider was created with
+     * pretty printing. The file is replaced atomically.
      *
      * @param list list of entities to serialize.
      * @exception throws IOException.
@@ -71,8 +94,15 @@ class JSONPersistenceProvider implements SerializationProviderIntf {
         }
         final String fullFilename = dirPath + fileName;
         File file = new File( fullFilename );
+        fileWriter.write( file.toPath(), out -> {
+            try( JsonGenerator gen = mapper.getFactory().createGenerator( out, JsonEncoding.UTF8 ) ) {
+                if( pretty ) {
+                    gen.useDefaultPrettyPrinter();
+                }
+                writer.writeValue( gen, list );
+            }
+        });
         log.info( "saved (" + fullFilename + ")." );
-        mapper.writerWithDefaultPrettyPrinter().writeValue( file, list );
     }
 
 
@@ -80,20 +110,36 @@ class JSONPersistenceProvider implements SerializationProviderIntf {
      * Deserialize JSON-stream into entities. The collector interface is called
      * when an entity was deserialized passing the entity to the invoking method.
      *
+     * The top-level array is traversed token by token. Each entity is deserialized
+     * directly from the parser and passed to the collector before the next one is
+     * read such that memory use does not grow with the size of the file. Elements
+     * other than objects, a missing end of the array (e.g. a truncated file) and
+     * content after the array fail the read such that partial data is not loaded.
+     *
      * @param collector functional interface to invoke caller passing a deserialized entity.
      * @exception throws IOException.
      */
     @Override
     public void readSerialStream( CollectorIntf collector ) throws IOException {
         final String fullFilename = dirPath + fileName;
-        try {
-            File file = new File( fullFilename );
-
-            JsonNode n = mapper.readTree( file );
-
-            for( JsonNode en : n ) {
-                EntityIntf e3 = mapper.treeToValue( en , clazz );
-                collector.collect(e3 );
+        try( JsonParser parser = mapper.getFactory().createParser( new File( fullFilename ) ) ) {
+
+            JsonToken token = parser.nextToken();
+            if( token != null ) {		// empty file yields empty repository
+                if( token != JsonToken.START_ARRAY ) {
+                    throw new JsonParseException( parser, "JSON array expected in " + fullFilename );
+                }
+                for( token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken() ) {
+                    if( token != JsonToken.START_OBJECT ) {
+                        throw new JsonParseException( parser, ( token==null? "end of JSON array" : "JSON object" )
+                                + " expected in " + fullFilename );
+                    }
+                    EntityIntf e3 = mapper.readValue( parser, clazz );
+                    collector.collect( e3 );
+                }
+                if( parser.nextToken() != null ) {
+                    throw new JsonParseException( parser, "content after JSON array in " + fullFilename );
+                }
             }
             log.info( "loaded (" + fullFilename + ")." );
 
@@ -102,6 +148,9 @@ class JSONPersistenceProvider implements SerializationProviderIntf {
             throw new IOException( e.getMessage() );
 
         } catch( FileNotFoundException e ) {
+            if( exists() ) {
+                throw e;	// file exists, but cannot be opened
+            }
             // ignore, will create empty repository
             log.info( "FileNotFoundException: " + fullFilename );
 
@@ -111,4 +160,9 @@ class JSONPersistenceProvider implements SerializationProviderIntf {
         }
     }
 
+    @Override
+    public boolean exists() {
+        return new File( dirPath + fileName ).exists();
+    }
+
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ class JavaSerializationPersistenceProvider implements SerializationProviderIntf
 
 	private final String dirPath;		// directory path of serialized file
 	private final String fileName;		// name of serialized file
+	private final AtomicFileWriter fileWriter;
 
 
 	/**
@@ -37,12 +38,13 @@ class JavaSerializationPersistenceProvider implements SerializationProviderIntf
 		int i2 = path.lastIndexOf( "/" ) + 1;
 		this.dirPath = path.substring( 0, i2 );
 		this.fileName = path.substring( i2, path.length() );
+		this.fileWriter = new AtomicFileWriter( PersistenceProviderFactory.getFsyncPolicy() );
 	}
 
 
 	/**
 	 * Serialize list of entities into serial stream using Java-Serialization. The full object
-	 * tree is serialized.
+	 * tree is serialized. The file is replaced atomically.
 	 * 
 	 * @param list list of entities to serialize.
 	 * @exception throws IOException.
@@ -58,23 +60,12 @@ class JavaSerializationPersistenceProvider implements SerializationProviderIntf
 			final String fullFilename = dirPath + fileName;
 	
 			final Path destination = new File( fullFilename ).toPath();
-			ObjectOutputStream out = null;
-			try {
-				out = new ObjectOutputStream( Files.newOutputStream( destination ) );
-			    out.writeObject( list );
-	
-			} catch( IOException ex ) {
-				ex.printStackTrace();
-	
-			} finally {
-				if( out != null ) {
-					try {
-						out.close();
-					} catch( IOException ex2 ) {
-						ex2.printStackTrace();
-					}
+			fileWriter.write( destination, os -> {
+				try( ObjectOutputStream out = new ObjectOutputStream( os ) ) {
+					out.writeObject( list );
 				}
-			}
+			});
+			log.info( "saved (" + fullFilename + ")." );
 		}
 	}
 
@@ -92,6 +83,11 @@ class JavaSerializationPersistenceProvider implements SerializationProviderIntf
 			final String fullFilename = dirPath + fileName;
 
 			final Path source = new File( fullFilename ).toPath();
+			if( ! Files.exists( source ) ) {
+				// ignore, will create empty repository
+				log.info( "FileNotFound: " + fullFilename );
+				return;
+			}
 			final ObjectInputStream in = new ObjectInputStream( Files.newInputStream( source ) );
 			try {
 				Serializable deserialized = (Serializable)in.readObject();
@@ -104,7 +100,7 @@ class JavaSerializationPersistenceProvider implements SerializationProviderIntf
 				}
 
 			} catch( ClassNotFoundException ex ) {
-				ex.printStackTrace();
+				throw new IOException( "Java deserialization: ClassNotFoundException: " + ex.getMessage(), ex );
 
 			} finally {
 				in.close();
@@ -114,4 +110,9 @@ class JavaSerializationPersistenceProvider implements SerializationProviderIntf
 		}
 	}
 
+	@Override
+	public boolean exists() {
+		return new File( dirPath + fileName ).exists();
+	}
+
 }
@@ -0,0 +1,458 @@
+package com.businessapp.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.businessapp.logic.LoggerProvider;
+import com.businessapp.model.EntityIntf;
+
+
+/**
+ * Local class of a journaling persistence provider. Instead of rewriting the
+ * full entity list for each mutation, one compact record is appended to a
+ * journal file per create, update or delete. The journal is replayed on top
+ * of the last snapshot when entities are read and it is periodically compacted
+ * into a new snapshot that is written by the underlying serialization provider.
+ *
+ * Journal records are JSON objects appended to "<path>.journal", e.g.:
+ *   {"op":"update","id":"C.ED84DX","entity":{...}}
+ *   {"op":"delete","id":"C.ED84DX"}
+ *
+ * When the snapshot cannot be read, the failure is passed to the caller and
+ * the provider becomes read-only such that neither the snapshot nor the journal
+ * are overwritten.
+ *
+ */
+class JournalPersistenceProvider implements PersistenceProviderIntf {
+	private static final LoggerProvider log = LoggerProvider.getLogger( JournalPersistenceProvider.class );
+
+	/*
+	 * Number of journal records after which the journal is compacted into a snapshot.
+	 */
+	static final int CompactAfterRecords = 1000;
+
+	enum Op { create, update, delete, clear };
+	enum Attr { op, id, entity };
+
+	private final SerializationProviderIntf snapshot;
+	private final Class<? extends EntityIntf> clazz;
+	private final File journalFile;
+	private final ObjectMapper mapper;
+	private final AtomicFileWriter fileWriter;	// forces journal appends to disk according to fsync policy
+
+	private List<? extends EntityIntf> entityList;
+	private int journalRecords;		// records appended since last snapshot
+	private volatile boolean readOnly;	// true after snapshot or journal could not be read
+
+	/*
+	 * Records buffered in a transaction between prepare() and commit(), null outside a transaction.
+	 */
+	private List<Object[]> pending;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param snapshot serialization provider used to write and read snapshots.
+	 * @param path path to data file, journal is kept in "<path>.journal".
+	 * @param clazz entity class needed for de-serialization of journal records.
+	 */
+	JournalPersistenceProvider( SerializationProviderIntf snapshot, String path, Class<? extends EntityIntf> clazz ) {
+		this.snapshot = snapshot;
+		this.clazz = clazz;
+		this.journalFile = new File( path.replace( '\\', '/' ) + ".journal" );
+		this.mapper = new ObjectMapper();
+		this.fileWriter = new AtomicFileWriter( PersistenceProviderFactory.getFsyncPolicy() );
+		this.entityList = null;
+		this.journalRecords = 0;
+		this.pending = null;
+	}
+
+
+	/**
+	 * Basic lifecycle operations inherited from ManagedComponentIntf.
+	 */
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	@Override
+	public String getName() {
+		return this.getClass().getSimpleName();
+	}
+
+
+	/**
+	 * Begin a transaction.
+	 * @param entityList list of entities affected by the transaction.
+	 */
+	@Override
+	public void prepare( List<? extends EntityIntf> entityList ) {
+		this.entityList = entityList;
+		this.pending = new ArrayList<Object[]>();
+	}
+
+
+	/**
+	 * Commit transaction appending all buffered records to the journal at once.
+	 * Compacts the journal into a new snapshot when the number of journal records
+	 * has exceeded CompactAfterRecords.
+	 * @return true if transaction was committed, false if it was rolled back.
+	 */
+	@Override
+	public boolean commit() {
+		boolean committed = pending == null || pending.size() == 0 || append( pending );
+		if( committed && journalRecords >= CompactAfterRecords && entityList != null ) {
+			compact( entityList );
+		}
+		rollback();		// reset transaction state
+		return committed;
+	}
+
+
+	/**
+	 * Roll back transaction discarding buffered records.
+	 */
+	@Override
+	public void rollback() {
+		this.entityList = null;
+		this.pending = null;
+	}
+
+
+	/**
+	 * C - Create new entity in underlying persistence provider.
+	 * @param entity entity to be created.
+	 */
+	@Override
+	public void create( EntityIntf entity ) {
+		append( Op.create, entity.getId(), entity );
+	}
+
+
+	/**
+	 * R - Read operations replay the journal on top of the last snapshot and
+	 * deliver resulting entities by invoking the collect( entity ); callback.
+	 * read( selector, collector ) only delivers entities that match the selector
+	 * (see Query.parse()).
+	 *
+	 * @param collector functional interface that is called from the
+	 * persistence provider for each collected entity.
+	 *
+	 */
+	@Override
+	public void read( String selector, CollectorIntf collector ) {
+		query( Query.parse( selector ), collector );
+	}
+
+	/**
+	 * Read entities selected by query from the snapshot with the journal replayed.
+	 */
+	@Override
+	public void query( Query query, CollectorIntf collector ) {
+		final Query.Selection<EntityIntf> selection = query.new Selection<EntityIntf>();
+		readAll( e -> {
+			selection.offer( e );
+		});
+		for( EntityIntf e : selection.result() ) {
+			collector.collect( e );
+		}
+	}
+
+	@Override
+	public boolean exists() {
+		return snapshot.exists() || journalFile.exists();
+	}
+
+	@Override
+	public void readAll( CollectorIntf collector ) {
+		final LinkedHashMap<String,EntityIntf> entities = new LinkedHashMap<String,EntityIntf>();
+		try {
+			snapshot.readSerialStream( e -> {
+				entities.put( e.getId(), e );
+			});
+		} catch( IOException e ) {
+			log.error( "snapshot could not be read: " + e.getMessage(), e );
+			readOnly = true;	// do not overwrite unreadable snapshot
+			throw new UncheckedIOException( e );
+		}
+
+		journalRecords = replay( entities );
+
+		if( journalRecords >= CompactAfterRecords ) {
+			compact( new ArrayList<EntityIntf>( entities.values() ) );
+		}
+
+		for( EntityIntf e : entities.values() ) {
+			collector.collect( e );
+		}
+	}
+
+
+	/**
+	 * U - Update operations are used to update entities by the persistence
+	 * provider.
+	 *
+	 * @param entity entity to be updated by persistence provider,
+	 */
+	@Override
+	public void update( EntityIntf entity ) {
+		append( Op.update, entity.getId(), entity );
+	}
+
+	@Override
+	public void updateAll( List<? extends EntityIntf> entityList ) {
+		compact( entityList );
+	}
+
+
+	/**
+	 * D - Delete operations are used to delete entities by the persistence
+	 * provider.
+	 *
+	 * @param entity entity to be updated by persistence provider,
+	 */
+	@Override
+	public void delete( EntityIntf entity ) {
+		append( Op.delete, entity.getId(), null );
+	}
+
+	@Override
+	public void deleteAll() {
+		append( Op.clear, null, null );
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Buffer record in a transaction or append it to the journal immediately.
+	 */
+	private void append( Op op, String id, EntityIntf entity ) {
+		Object[] record = new Object[] { op, id, entity };
+		if( pending != null ) {
+			pending.add( record );
+		} else {
+			append( Arrays.<Object[]>asList( record ) );
+		}
+	}
+
+	/**
+	 * Append records to the journal with one write.
+	 * @return true if records were written.
+	 */
+	private boolean append( List<Object[]> records ) {
+		if( readOnly ) {
+			log.error( "journal records refused, data could not be read and is not overwritten (" + journalFile + ").", null );
+			return false;
+		}
+		File dir = journalFile.getAbsoluteFile().getParentFile();
+		if( ! dir.exists() ) {
+			dir.mkdirs();	// create dataPath, if not present
+		}
+		long length = journalFile.length();
+		try( FileChannel channel = FileChannel.open( journalFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND ) )
+		{
+			OutputStream out = new BufferedOutputStream( Channels.newOutputStream( channel ) );
+			JsonGenerator gen = mapper.getFactory().createGenerator( out );
+			for( Object[] record : records ) {
+				writeRecord( gen, (Op)record[0], (String)record[1], (EntityIntf)record[2] );
+			}
+			gen.flush();
+			fileWriter.sync( channel, journalFile.toPath() );
+			gen.close();
+			journalRecords += records.size();
+			return true;
+
+		} catch( IOException e ) {
+			log.error( "journal records could not be written (" + journalFile + "): " + e.getMessage(), e );
+			// cut off partially written records
+			try( RandomAccessFile raf = new RandomAccessFile( journalFile, "rw" ) ) {
+				raf.setLength( length );
+			} catch( IOException e2 ) {
+				log.error( "journal could not be truncated (" + journalFile + "): " + e2.getMessage(), e2 );
+			}
+			return false;
+		}
+	}
+
+	private void writeRecord( JsonGenerator gen, Op op, String id, EntityIntf entity ) throws IOException {
+		gen.writeStartObject();
+		gen.writeStringField( Attr.op.name(), op.name() );
+		if( id != null ) {
+			gen.writeStringField( Attr.id.name(), id );
+		}
+		if( entity != null ) {
+			gen.writeObjectField( Attr.entity.name(), entity );
+		}
+		gen.writeEndObject();
+		gen.writeRaw( '\n' );
+	}
+
+	/**
+	 * Replay journal records on top of entities restored from the snapshot.
+	 * A torn record at the end of the journal (e.g. after a crash while appending)
+	 * ends the replay and is cut off such that subsequently appended records can
+	 * be replayed. Any other failure, e.g. a complete record that cannot be mapped
+	 * to an entity of the current model, leaves the journal untouched and makes
+	 * the provider read-only.
+	 * @return number of records replayed.
+	 * @throws UncheckedIOException if the journal could not be replayed.
+	 */
+	private int replay( LinkedHashMap<String,EntityIntf> entities ) {
+		int records = 0;
+		long validLength = 0L;		// journal length up to the last complete record
+		if( journalFile.exists() ) {
+			try( JsonParser parser = mapper.getFactory().createParser( journalFile ) ) {
+				while( true ) {
+					JsonNode record;
+					try {
+						JsonToken token = parser.nextToken();
+						if( token == null ) {
+							break;
+						}
+						if( token != JsonToken.START_OBJECT ) {
+							throw new JsonParseException( parser, "journal record expected" );
+						}
+						record = mapper.readTree( parser );
+
+					} catch( JsonParseException e ) {
+						if( ! tornTail( validLength ) ) {
+							throw e;
+						}
+						log.warn( "journal replay stopped after " + records + " records, torn record cut off ("
+							+ journalFile + "): " + e.getMessage() );
+						try( RandomAccessFile raf = new RandomAccessFile( journalFile, "rw" ) ) {
+							raf.setLength( validLength );
+							if( validLength > 0 ) {
+								raf.seek( validLength );
+								raf.write( '\n' );		// line break of last complete record
+							}
+						}
+						break;
+					}
+					try {
+						apply( record, entities );
+
+					} catch( RuntimeException e ) {
+						throw new IOException( "journal record " + ( records + 1 ) + " could not be replayed: " + e.getMessage(), e );
+					}
+					records++;
+					validLength = parser.getCurrentLocation().getByteOffset();
+				}
+			} catch( IOException e ) {
+				log.error( "journal replay failed after " + records + " records (" + journalFile + "): " + e.getMessage(), e );
+				readOnly = true;	// do not overwrite records that could not be replayed
+				throw new UncheckedIOException( e );
+			}
+			log.info( "replayed " + records + " journal records (" + journalFile + ")." );
+		}
+		return records;
+	}
+
+	/**
+	 * Apply journal record to entities.
+	 */
+	private void apply( JsonNode record, LinkedHashMap<String,EntityIntf> entities ) throws IOException {
+		if( ! record.has( Attr.op.name() ) ) {
+			throw new IOException( "no \"" + Attr.op.name() + "\" in journal record" );
+		}
+		String id = record.has( Attr.id.name() )? record.get( Attr.id.name() ).asText() : null;
+		switch( Op.valueOf( record.get( Attr.op.name() ).asText() ) ) {
+		case create:
+		case update:
+			EntityIntf e = mapper.treeToValue( record.get( Attr.entity.name() ), clazz );
+			entities.put( e.getId(), e );
+			break;
+		case delete:
+			entities.remove( id );
+			break;
+		case clear:
+			entities.clear();
+			break;
+		}
+	}
+
+	/**
+	 * Test whether the journal beyond length holds no more than one torn record,
+	 * i.e. no line break is followed by further content. Records end with a line
+	 * break and contain none.
+	 */
+	private boolean tornTail( long length ) throws IOException {
+		try( InputStream in = new BufferedInputStream( new FileInputStream( journalFile ) ) ) {
+			long skipped = 0L;
+			while( skipped < length ) {
+				long n = in.skip( length - skipped );
+				if( n <= 0 ) {
+					return false;
+				}
+				skipped += n;
+			}
+			boolean content = false;	// content of torn record seen
+			boolean lineBreak = false;	// line break after content seen
+			for( int b = in.read(); b >= 0; b = in.read() ) {
+				if( b == '\n' ) {
+					lineBreak = content;
+
+				} else if( b != ' ' && b != '\r' && b != '\t' ) {
+					if( lineBreak ) {
+						return false;
+					}
+					content = true;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Write a new snapshot and truncate the journal. The journal is only truncated
+	 * after the snapshot was written. Replaying a journal over a snapshot that already
+	 * contains its records is idempotent.
+	 */
+	private void compact( List<? extends EntityIntf> entityList ) {
+		if( readOnly ) {
+			log.error( "compaction refused, data could not be read and is not overwritten (" + journalFile + ").", null );
+			return;
+		}
+		try {
+			snapshot.writeSerialStream( entityList );
+			new FileOutputStream( journalFile, false ).close();
+			journalRecords = 0;
+			log.info( "compacted (" + journalFile + ")." );
+
+		} catch( IOException e ) {
+			log.error( "journal compaction failed (" + journalFile + "): " + e.getMessage(), e );
+		}
+	}
+
+}
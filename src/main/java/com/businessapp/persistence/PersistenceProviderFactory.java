@@ -18,9 +18,63 @@ public class PersistenceProviderFactory {
 	public enum PersistenceSelector {
 		Default,
 		JavaSerialization,
-		JSONSerialization
+		JSONSerialization,
+		JSONPrettySerialization,
+		JSONJournal,
+		BinarySnapshot,
+		BinaryJournal,
+		H2Database
 	};
 
+	/**
+	 * Policy when written data files are forced to disk, trading durability
+	 * against write latency. Replaced files are forced before the rename in any
+	 * case, the policy applies to directories and appended journals:
+	 *  - ALWAYS: forced to disk with every save,
+	 *  - BATCHED: forced to disk at most once per second, later saves of the
+	 *    second are forced by a deferred sync,
+	 *  - NEVER: flushing is left to the operating system.
+	 */
+	public enum FsyncPolicy {
+		ALWAYS,
+		BATCHED,
+		NEVER
+	};
+
+	private static FsyncPolicy fsyncPolicy = FsyncPolicy.ALWAYS;
+
+
+	/**
+	 * Set policy when data files are forced to disk for subsequently created providers.
+	 * @param policy fsync policy.
+	 */
+	public static void setFsyncPolicy( FsyncPolicy policy ) {
+		fsyncPolicy = policy;
+	}
+
+	/**
+	 * Get policy when data files are forced to disk.
+	 * @return fsync policy.
+	 */
+	public static FsyncPolicy getFsyncPolicy() {
+		return fsyncPolicy;
+	}
+
+
+	/**
+	 * Public factory method that wraps a persistence provider with a write-behind
+	 * provider. Committed operations are flushed by a background thread that
+	 * coalesces bursts of operations into one transaction of the wrapped provider.
+	 * 
+	 * @param provider persistence provider to wrap.
+	 * @param maxDelay maximum delay in msec before pending operations are flushed.
+	 * @param maxPending maximum number of pending operations before they are flushed.
+	 * @return write-behind persistence provider.
+	 */
+	public static PersistenceProviderIntf getWriteBehindInstance( PersistenceProviderIntf provider, long maxDelay, int maxPending ) {
+		return new WriteBehindPersistenceProvider( provider, maxDelay, maxPending );
+	}
+
 
 	/**
 	 * Public factory method that returns persistence provider.
@@ -43,6 +97,29 @@ public class PersistenceProviderFactory {
 			serializationProvider = new JSONPersistenceProvider( path, clazz );
 			break;
 
+		case JSONPrettySerialization:
+			// pretty-printed JSON, e.g. for export
+			serializationProvider = new JSONPersistenceProvider( path, clazz, true );
+			break;
+
+		case JSONJournal:
+			// JSON snapshot plus journal of appended create/update/delete records
+			return new JournalPersistenceProvider( new JSONPersistenceProvider( path, clazz ), path, clazz );
+
+		case BinarySnapshot:
+			// binary snapshot for fast cold start, imports JSON when no snapshot exists
+			serializationProvider = new BinarySnapshotProvider( path, clazz, new JSONPersistenceProvider( path, clazz ) );
+			break;
+
+		case BinaryJournal:
+			// binary snapshot plus journal of appended create/update/delete records
+			return new JournalPersistenceProvider(
+					new BinarySnapshotProvider( path, clazz, new JSONPersistenceProvider( path, clazz ) ), path, clazz );
+
+		case H2Database:
+			// embedded H2 database with one table per entity type
+			return new H2PersistenceProvider( path, clazz );
+
 		default:
 		}
 
@@ -2,28 +2,39 @@ package com.businessapp.persistence;
 
 import java.util.List;
 
+import com.businessapp.logic.ManagedComponentIntf;
 import com.businessapp.model.EntityIntf;
 
 
 /**
  * Public CRUD (create, read, update, delete) interface of an entity-based
- * persistence provider.
+ * persistence provider. Providers are managed components, stop() flushes
+ * operations that have not yet been written.
  * 
  * @author Sven Graupner
  *
  */
-public interface PersistenceProviderIntf {
+public interface PersistenceProviderIntf extends ManagedComponentIntf {
 
 	/**
-	 * Begin a transaction.
+	 * Begin a transaction. Create, update and delete operations invoked after
+	 * prepare() are buffered and flushed once when the transaction is committed.
+	 * Operations invoked outside a transaction are flushed immediately.
 	 * @param entityList list of entities affected by the transaction.
 	 */
 	public void prepare( List<? extends EntityIntf> entityList );
 
 	/**
-	 * Commit transaction.
+	 * Commit transaction flushing all buffered operations. If the flush fails,
+	 * the transaction is rolled back.
+	 * @return true if transaction was committed, false if it was rolled back.
 	 */
-	public void commit();
+	public boolean commit();
+
+	/**
+	 * Roll back transaction discarding all buffered operations.
+	 */
+	public void rollback();
 
 	/**
 	 * C - Create new entity in underlying persistence provider.
@@ -37,8 +48,19 @@ public interface PersistenceProviderIntf {
 	 * provider are delivered by invoking the collect( entity );
 	 * callback.
 	 * 
+	 * Stored data that exists but cannot be read is reported with an
+	 * UncheckedIOException, never as an empty result, and the provider refuses
+	 * to overwrite it.
+	 *
+	 * read( selector, collector ) collects entities that match the selector in
+	 * insertion order. Selectors are parsed into query conditions (see Query.parse()),
+	 * e.g. "status = ACTIVE and name ^= 'Mc'", and evaluated alike by all providers.
+	 *
 	 * @param collector functional interface that is called from the
 	 * persistence provider for each collected entity.
+	 * @throws java.io.UncheckedIOException if stored data could not be read.
+	 * @throws IllegalArgumentException if the selector is malformed or refers to
+	 * an unknown attribute.
 	 *
 	 */
 	@FunctionalInterface
@@ -48,6 +70,23 @@ public interface PersistenceProviderIntf {
 	public void read( String selector, CollectorIntf collector );
 	public void readAll( CollectorIntf collector );
 
+	/**
+	 * Test whether the provider has stored data, e.g. whether its data file exists.
+	 * Stored data may be empty, e.g. when all entities were deleted.
+	 * @return true if stored data exists.
+	 */
+	public boolean exists();
+
+	/**
+	 * R - Read entities selected by a typed query (conditions, sort, offset, limit).
+	 * Providers push the query down where they can such that entities that do not
+	 * match are not materialized.
+	 * 
+	 * @param query query selecting entities.
+	 * @param collector functional interface that is called for each selected entity.
+	 */
+	public void query( Query query, CollectorIntf collector );
+
 
 	/**
 	 * U - Update operations are used to update entities by the persistence
@@ -0,0 +1,419 @@
+package com.businessapp.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.businessapp.model.EntityIntf;
+
+
+/**
+ * Public class of a typed query over entity attributes (see EntityAttributes)
+ * with conditions that must all hold, an optional sort attribute, offset and
+ * limit. Example "first 50 ACTIVE Customers sorted by name":
+ *
+ *   new Query( Arrays.asList( new Query.Condition( "status", Query.Op.eq, CustomerStatus.ACTIVE ) ),
+ *       "name", false, 0, 50 );
+ *
+ * Repositories evaluate queries against their indexes, persistence providers
+ * push them down where they can. Values are compared in normalized form, enums
+ * by name and dates as epoch millis.
+ *
+ */
+public class Query {
+
+	/**
+	 * Comparison operators of conditions.
+	 */
+	public enum Op { eq, ne, lt, le, gt, ge, prefix };
+
+	public static final int NoLimit = -1;
+
+	/**
+	 * Condition comparing an entity attribute with a value.
+	 */
+	public static class Condition {
+		private final String field;
+		private final Op op;
+		private final Object value;
+
+		/**
+		 * Constructor.
+		 * @param field attribute name, e.g. "status".
+		 * @param op comparison operator.
+		 * @param value value to compare with.
+		 */
+		public Condition( String field, Op op, Object value ) {
+			this.field = field;
+			this.op = op;
+			this.value = normalize( value );
+		}
+
+		public String getField() {
+			return field;
+		}
+
+		public Op getOp() {
+			return op;
+		}
+
+		public Object getValue() {
+			return value;
+		}
+
+		/**
+		 * Test normalized attribute value against condition.
+		 * @param v normalized attribute value.
+		 * @return true if condition holds.
+		 */
+		public boolean test( Object v ) {
+			if( v == null || value == null ) {
+				switch( op ) {
+				case eq: return v == value;
+				case ne: return v != value;
+				default: return false;
+				}
+			}
+			switch( op ) {
+			case prefix: return v.toString().startsWith( value.toString() );
+			case eq: return compareValues( v, value ) == 0;
+			case ne: return compareValues( v, value ) != 0;
+			case lt: return compareValues( v, value ) < 0;
+			case le: return compareValues( v, value ) <= 0;
+			case gt: return compareValues( v, value ) > 0;
+			case ge: return compareValues( v, value ) >= 0;
+			}
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return field + " " + op + " " + value;
+		}
+	}
+
+	private final List<Condition> conditions;
+	private final String sortField;		// null for insertion order
+	private final boolean descending;
+	private final int offset;
+	private final int limit;			// NoLimit for all
+
+
+	/**
+	 * Constructor of a query that returns all entities matching conditions in insertion order.
+	 * @param conditions conditions that must all hold.
+	 */
+	public Query( List<Condition> conditions ) {
+		this( conditions, null, false, 0, NoLimit );
+	}
+
+	/**
+	 * Constructor.
+	 * @param conditions conditions that must all hold.
+	 * @param sortField attribute to sort by, null for insertion order.
+	 * @param descending if true, sort in descending order.
+	 * @param offset number of matching entities to skip.
+	 * @param limit maximum number of entities returned, NoLimit for all.
+	 */
+	public Query( List<Condition> conditions, String sortField, boolean descending, int offset, int limit ) {
+		this.conditions = conditions==null? Collections.<Condition>emptyList() : new ArrayList<Condition>( conditions );
+		this.sortField = sortField;
+		this.descending = descending;
+		this.offset = Math.max( 0, offset );
+		this.limit = limit;
+	}
+
+
+	public List<Condition> getConditions() {
+		return Collections.unmodifiableList( conditions );
+	}
+
+	public String getSortField() {
+		return sortField;
+	}
+
+	public boolean isDescending() {
+		return descending;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+
+	/**
+	 * Test whether entity matches all conditions.
+	 * @param entity entity to test.
+	 * @return true if all conditions hold.
+	 */
+	public boolean matches( EntityIntf entity ) {
+		for( Condition c : conditions ) {
+			if( ! c.test( EntityAttributes.get( entity, c.getField() ) ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Evaluate query over entities: filter by conditions, sort, apply offset and
+	 * limit. Without sort attribute the scan stops when the limit is reached,
+	 * with sort attribute only offset + limit entities are kept in a bounded heap.
+	 *
+	 * @param entities candidate entities in insertion order.
+	 * @return selected entities.
+	 */
+	public <E extends EntityIntf> List<E> select( Iterable<? extends E> entities ) {
+		final Selection<E> selection = new Selection<E>();
+		for( E e : entities ) {
+			if( ! selection.offer( e ) ) {
+				break;
+			}
+		}
+		return selection.result();
+	}
+
+	/**
+	 * Incremental evaluation of the query over entities offered one at a time,
+	 * e.g. while entities are streamed from a file.
+	 */
+	class Selection<E extends EntityIntf> {
+		private final List<E> matches = new ArrayList<E>();
+		private final PriorityQueue<E> heap;	// first offset + limit entities by sort order, head is the last
+		private final Comparator<EntityIntf> order;
+		private int skip = offset;
+
+		Selection() {
+			this.order = sortField==null? null : comparator();
+			this.heap = order==null || limit == NoLimit? null : new PriorityQueue<E>( offset + limit + 1, order.reversed() );
+		}
+
+		/**
+		 * Offer entity to the selection.
+		 * @return false if no further entities are needed.
+		 */
+		boolean offer( E e ) {
+			if( order == null && limit != NoLimit && matches.size() >= limit ) {
+				return false;
+			}
+			if( matches( e ) ) {
+				if( order == null && skip > 0 ) {
+					skip--;
+
+				} else if( heap != null ) {
+					if( heap.size() < offset + limit ) {
+						heap.add( e );
+					} else if( limit > 0 && order.compare( e, heap.peek() ) < 0 ) {
+						heap.poll();
+						heap.add( e );
+					}
+				} else {
+					matches.add( e );
+				}
+			}
+			return order != null || limit == NoLimit || matches.size() < limit;
+		}
+
+		/**
+		 * Return selected entities.
+		 */
+		List<E> result() {
+			if( order == null ) {
+				return matches;
+			}
+			final List<E> sorted = heap != null? new ArrayList<E>( heap ) : matches;
+			Collections.sort( sorted, order );
+			return offset >= sorted.size()? new ArrayList<E>() : new ArrayList<E>( sorted.subList( offset, sorted.size() ) );
+		}
+	}
+
+	/**
+	 * Return comparator of sort attribute, stable for equal values by id.
+	 * @return comparator of sort attribute.
+	 */
+	public Comparator<EntityIntf> comparator() {
+		Comparator<EntityIntf> c = ( a, b ) -> compareValues( EntityAttributes.get( a, sortField ), EntityAttributes.get( b, sortField ) );
+		if( descending ) {
+			c = c.reversed();
+		}
+		return c.thenComparing( EntityIntf::getId );
+	}
+
+
+	/**
+	 * Parse selector of read( selector, collector ) into a query that returns
+	 * matching entities in insertion order. A selector is a list of conditions
+	 * joined by "and", each of the form: attribute op value, with op one of
+	 * =, !=, <, <=, >, >= or ^= (prefix) and value a number, null, a word or
+	 * a 'quoted' string ('' for a quote), e.g.
+	 *
+	 *   status = ACTIVE and name ^= 'Mc'
+	 *
+	 * Selectors are never passed on as SQL, all providers evaluate the parsed
+	 * conditions.
+	 * @param selector selector, null or empty for all entities.
+	 * @return query of selector.
+	 * @throws IllegalArgumentException if selector is malformed.
+	 */
+	public static Query parse( String selector ) {
+		final List<Condition> conditions = new ArrayList<Condition>();
+		final String s = selector==null? "" : selector;
+		int i = skipBlanks( s, 0 );
+		while( i < s.length() ) {
+			if( ! conditions.isEmpty() ) {
+				if( ! s.regionMatches( true, i, "and", 0, 3 ) || i + 3 >= s.length() || ! Character.isWhitespace( s.charAt( i + 3 ) ) ) {
+					throw new IllegalArgumentException( "\"and\" expected at " + i + " in selector: " + selector );
+				}
+				i = skipBlanks( s, i + 3 );
+			}
+			int start = i;
+			while( i < s.length() && Character.isJavaIdentifierPart( s.charAt( i ) ) ) {
+				i++;
+			}
+			final String field = s.substring( start, i );
+			i = skipBlanks( s, i );
+			start = i;
+			while( i < s.length() && "=!<>^".indexOf( s.charAt( i ) ) >= 0 ) {
+				i++;
+			}
+			final Op op = Selectors.get( s.substring( start, i ) );
+			if( field.isEmpty() || op == null ) {
+				throw new IllegalArgumentException( "condition expected at " + start + " in selector: " + selector );
+			}
+			i = skipBlanks( s, i );
+			final StringBuffer value = new StringBuffer();
+			boolean quoted = false;
+			if( i < s.length() && s.charAt( i ) == '\'' ) {
+				for( quoted = true, i++; ; i++ ) {
+					if( i >= s.length() ) {
+						throw new IllegalArgumentException( "unterminated string in selector: " + selector );
+					}
+					if( s.charAt( i ) == '\'' ) {
+						if( i + 1 < s.length() && s.charAt( i + 1 ) == '\'' ) {
+							i++;
+						} else {
+							i++;
+							break;
+						}
+					}
+					value.append( s.charAt( i ) );
+				}
+			} else {
+				while( i < s.length() && ! Character.isWhitespace( s.charAt( i ) ) ) {
+					value.append( s.charAt( i++ ) );
+				}
+				if( value.length() == 0 ) {
+					throw new IllegalArgumentException( "value expected at " + i + " in selector: " + selector );
+				}
+			}
+			conditions.add( new Condition( field, op, quoted? value.toString() : literal( value.toString() ) ) );
+			i = skipBlanks( s, i );
+		}
+		return new Query( conditions );
+	}
+
+	/**
+	 * Normalize value for comparison: enums by name, dates as epoch millis,
+	 * integral numbers as Long and other numbers as Double, whole numbers as Long
+	 * such that equal numbers are equal keys regardless of their type.
+	 * @param value value to normalize.
+	 * @return normalized value.
+	 */
+	public static Object normalize( Object value ) {
+		if( value instanceof Enum<?> ) {
+			return ((Enum<?>)value).name();
+		}
+		if( value instanceof Date ) {
+			return ((Date)value).getTime();
+		}
+		if( value instanceof Integer || value instanceof Short || value instanceof Byte ) {
+			return ((Number)value).longValue();
+		}
+		if( value instanceof Double || value instanceof Float ) {
+			final double d = ((Number)value).doubleValue();
+			return d == Math.rint( d ) && Math.abs( d ) <= MaxExactLong? (Object)Long.valueOf( (long)d ) : (Object)Double.valueOf( d );
+		}
+		return value;
+	}
+
+	/**
+	 * Compare normalized values, null first, numbers numerically, other values
+	 * by natural order if of the same type and by String representation otherwise.
+	 * Values of any type can be compared, e.g. as keys of ordered indexes.
+	 * @param a first value.
+	 * @param b second value.
+	 * @return negative, zero or positive as a is less than, equal to or greater than b.
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	public static int compareValues( Object a, Object b ) {
+		if( a == null || b == null ) {
+			return a == b? 0 : ( a == null? -1 : 1 );
+		}
+		if( a instanceof Long && b instanceof Long ) {
+			return Long.compare( (Long)a, (Long)b );
+		}
+		if( a instanceof Number && b instanceof Number ) {
+			return Double.compare( ((Number)a).doubleValue(), ((Number)b).doubleValue() );
+		}
+		if( a instanceof Comparable && a.getClass() == b.getClass() ) {
+			return ((Comparable)a).compareTo( b );
+		}
+		return a.toString().compareTo( b.toString() );
+	}
+
+	/*
+	 * Private methods.
+	 */
+
+	private static final long MaxExactLong = 1L << 53;	// doubles represent whole numbers exactly up to here
+
+	private static final HashMap<String,Op> Selectors = new HashMap<String,Op>();
+	static {
+		Selectors.put( "=", Op.eq );
+		Selectors.put( "!=", Op.ne );
+		Selectors.put( "<", Op.lt );
+		Selectors.put( "<=", Op.le );
+		Selectors.put( ">", Op.gt );
+		Selectors.put( ">=", Op.ge );
+		Selectors.put( "^=", Op.prefix );
+	}
+
+	private static int skipBlanks( String s, int i ) {
+		while( i < s.length() && Character.isWhitespace( s.charAt( i ) ) ) {
+			i++;
+		}
+		return i;
+	}
+
+	private static Object literal( String word ) {
+		if( word.equalsIgnoreCase( "null" ) ) {
+			return null;
+		}
+		if( word.matches( "[-+]?\\d+" ) ) {
+			try {
+				return Long.valueOf( word );
+			} catch( NumberFormatException e ) {
+				// too large for long, read as double
+			}
+		}
+		if( word.matches( "[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?" ) ) {
+			return Double.valueOf( word );
+		}
+		return word;
+	}
+
+	@Override
+	public String toString() {
+		return "Query" + conditions + ( sortField==null? "" : " order by " + sortField + ( descending? " desc" : "" ) )
+			+ " offset " + offset + " limit " + limit;
+	}
+
+}
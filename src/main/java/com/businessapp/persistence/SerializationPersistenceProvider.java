@@ -1,8 +1,10 @@
 package com.businessapp.persistence;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
+import com.businessapp.logic.LoggerProvider;
 import com.businessapp.model.EntityIntf;
 
 
@@ -10,13 +12,21 @@ import com.businessapp.model.EntityIntf;
  * Local class of a serialization persistence provider that implements the
  * entity-based persistence provider CRUD interface.
  * 
+ * When an existing data file cannot be read, the failure is passed to the
+ * caller and the provider becomes read-only such that the file is not
+ * overwritten with an incomplete entity list.
+ * 
  * @author Sven Graupner
  *
  */
 class SerializationPersistenceProvider implements PersistenceProviderIntf {
+	private static final LoggerProvider log = LoggerProvider.getLogger( SerializationPersistenceProvider.class );
 
 	private final SerializationProviderIntf provider;
 	private List<? extends EntityIntf> entityList;
+	private boolean inTransaction;	// true between prepare() and commit()/rollback()
+	private boolean dirty;			// true if transaction has buffered operations
+	private volatile boolean readOnly;	// true after data file could not be read
 
 
 	SerializationPersistenceProvider( SerializationProviderIntf provider ) {
@@ -24,6 +34,23 @@ class SerializationPersistenceProvider implements PersistenceProviderIntf {
 	}
 
 
+	/**
+	 * Basic lifecycle operations inherited from ManagedComponentIntf.
+	 */
+	@Override
+	public void start() {
+	}
+
+	@Override
+	public void stop() {
+	}
+
+	@Override
+	public String getName() {
+		return this.getClass().getSimpleName();
+	}
+
+
 	/**
 	 * Begin a transaction.
 	 * @param entityList list of entities affected by the transaction.
@@ -31,15 +58,34 @@ class SerializationPersistenceProvider implements PersistenceProviderIntf {
 	@Override
 	public void prepare( List<? extends EntityIntf> entityList ) {
 		this.entityList = entityList;
+		this.inTransaction = true;
+		this.dirty = false;
 	}
 
 
 	/**
-	 * Commit transaction.
+	 * Commit transaction. The entity list is saved once if the transaction
+	 * contained any create, update or delete operation.
+	 * @return true if transaction was committed, false if it was rolled back.
 	 */
 	@Override
-	public void commit() {
-		this.entityList = null;
+	public boolean commit() {
+		boolean committed = ! dirty || save( entityList );
+		if( committed ) {
+			end();
+		} else {
+			rollback();
+		}
+		return committed;
+	}
+
+
+	/**
+	 * Roll back transaction discarding buffered operations.
+	 */
+	@Override
+	public void rollback() {
+		end();
 	}
 
 
@@ -57,7 +103,8 @@ class SerializationPersistenceProvider implements PersistenceProviderIntf {
 	 * R - Read operations from a persistence provider are initiated by
 	 * invoking read methods. Entities collected from the persistence
 	 * provider are delivered by invoking the collect( entity );
-	 * callback.
+	 * callback. read( selector, collector ) only delivers entities that
+	 * match the selector (see Query.parse()).
 	 * 
 	 * @param collector functional interface that is called from the
 	 * persistence provider for each collected entity.
@@ -65,7 +112,7 @@ class SerializationPersistenceProvider implements PersistenceProviderIntf {
 	 */
 	@Override
 	public void read( String selector, CollectorIntf collector ) {
-		load( collector );
+		query( Query.parse( selector ), collector );
 	}
 
 	@Override
@@ -73,6 +120,27 @@ class SerializationPersistenceProvider implements PersistenceProviderIntf {
 		load( collector );
 	}
 
+	@Override
+	public boolean exists() {
+		return provider != null && provider.exists();
+	}
+
+	/**
+	 * Read entities selected by query. Entities are filtered while they are
+	 * streamed from the serialization provider, only entities selected by the
+	 * query are retained.
+	 */
+	@Override
+	public void query( Query query, CollectorIntf collector ) {
+		final Query.Selection<EntityIntf> selection = query.new Selection<EntityIntf>();
+		load( e -> {
+			selection.offer( e );
+		});
+		for( EntityIntf e : selection.result() ) {
+			collector.collect( e );
+		}
+	}
+
 
 	/**
 	 * U - Update operations are used to update entities by the persistence
@@ -113,17 +181,34 @@ class SerializationPersistenceProvider implements PersistenceProviderIntf {
 	 */
 
 	private void save() {
-		save( entityList );
+		if( inTransaction ) {
+			dirty = true;		// defer until commit()
+		} else {
+			save( entityList );
+		}
 	}
-	private void save( List<? extends EntityIntf> entityList ) {
+	private boolean save( List<? extends EntityIntf> entityList ) {
+		if( readOnly ) {
+			log.error( "save refused, data file could not be read and is not overwritten.", null );
+			return false;
+		}
 		if( provider != null ) {
 			try {
 
 				provider.writeSerialStream( entityList );
 
 			} catch( IOException e ) {
+				log.error( "save failed: " + e.getMessage(), e );
+				return false;
 			}
 		}
+		return true;
+	}
+
+	private void end() {
+		this.entityList = null;
+		this.inTransaction = false;
+		this.dirty = false;
 	}
 
 	private void load( CollectorIntf collector ) {
@@ -132,6 +217,9 @@ class SerializationPersistenceProvider implements PersistenceProviderIntf {
 				provider.readSerialStream( collector );
 	
 			} catch( IOException e ) {
+				log.error( "load failed, data file could not be read: " + e.getMessage(), e );
+				readOnly = true;
+				throw new UncheckedIOException( e );
 			}
 		}
 	}
@@ -34,4 +34,12 @@ interface SerializationProviderIntf {
 	 */
 	public void readSerialStream( CollectorIntf collector ) throws IOException;
 
+
+	/**
+	 * Test whether the serialized data file exists.
+	 * 
+	 * @return true if data file exists.
+	 */
+	public boolean exists();
+
 }
@@ -0,0 +1,384 @@
+package com.businessapp.persistence;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.businessapp.logic.LoggerProvider;
+import com.businessapp.model.EntityIntf;
+
+
+/**
+ * Local class of a write-behind persistence provider that wraps another
+ * persistence provider. Committed transactions only mark the provider dirty
+ * and return immediately to the caller (e.g. the JavaFX application thread).
+ * A background thread coalesces bursts of operations into one transaction
+ * of the wrapped provider, which is flushed when the oldest pending operation
+ * is older than maxDelay msec or more than maxPending operations are pending.
+ * Pending operations are flushed on stop().
+ *
+ * Operations on the same entity are coalesced, e.g. create followed by update
+ * results in one create, create followed by delete cancels out.
+ *
+ * The entity list passed to prepare() is kept by reference and handed to the
+ * wrapped provider when it is flushed. It must not be changed afterwards,
+ * repositories pass their immutable snapshot.
+ *
+ */
+class WriteBehindPersistenceProvider implements PersistenceProviderIntf {
+	private static final LoggerProvider log = LoggerProvider.getLogger( WriteBehindPersistenceProvider.class );
+
+	enum Op { create, update, delete };
+
+	private final PersistenceProviderIntf provider;		// wrapped provider
+	private final long maxDelay;
+	private final int maxPending;
+
+	/*
+	 * Pending (committed, not yet flushed) state guarded by lock.
+	 */
+	private final Object lock = new Object();
+	private LinkedHashMap<String,Object[]> pending;		// id -> { Op, entity }
+	private boolean pendingClear;						// deleteAll() precedes pending operations
+	private List<? extends EntityIntf> pendingList;		// entity list of last committed transaction
+	private long pendingSince;							// time of oldest pending operation
+
+	private final Object flushLock = new Object();		// serializes flushes of the wrapped provider
+
+	/*
+	 * Transaction state of the calling thread between prepare() and commit().
+	 */
+	private List<? extends EntityIntf> entityList;
+	private List<Object[]> txOps;
+	private boolean txClear;
+
+	private Thread flusher;
+	private volatile boolean running;
+
+
+	/**
+	 * Constructor.
+	 * @param provider wrapped persistence provider.
+	 * @param maxDelay maximum delay in msec before pending operations are flushed.
+	 * @param maxPending maximum number of pending operations before they are flushed.
+	 */
+	WriteBehindPersistenceProvider( PersistenceProviderIntf provider, long maxDelay, int maxPending ) {
+		this.provider = provider;
+		this.maxDelay = maxDelay;
+		this.maxPending = maxPending;
+		this.pending = new LinkedHashMap<String,Object[]>();
+		this.pendingClear = false;
+		this.pendingList = null;
+		this.flusher = null;
+		this.running = false;
+	}
+
+
+	/**
+	 * Basic lifecycle operations inherited from ManagedComponentIntf.
+	 * start() launches the background flusher, stop() ends it and flushes
+	 * all pending operations.
+	 */
+	@Override
+	public synchronized void start() {
+		provider.start();
+		if( flusher == null ) {
+			running = true;
+			flusher = new Thread( this::runFlusher, getName() );
+			flusher.setDaemon( true );
+			flusher.start();
+		}
+	}
+
+	@Override
+	public void stop() {
+		final Thread thread;
+		synchronized( this ) {
+			thread = flusher;
+			flusher = null;
+			running = false;
+		}
+		if( thread != null ) {
+			synchronized( lock ) {
+				lock.notifyAll();
+			}
+			try {
+				thread.join();		// without holding a monitor the flusher may need
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+		provider.stop();
+	}
+
+	@Override
+	public String getName() {
+		return this.getClass().getSimpleName() + " for " + provider.getName();
+	}
+
+
+	/**
+	 * Begin a transaction.
+	 * @param entityList list of entities affected by the transaction.
+	 */
+	@Override
+	public void prepare( List<? extends EntityIntf> entityList ) {
+		this.entityList = entityList;
+		this.txOps = new ArrayList<Object[]>();
+		this.txClear = false;
+	}
+
+
+	/**
+	 * Commit transaction by merging its operations into pending operations
+	 * that are flushed by the background thread.
+	 * @return true, transaction was accepted for write-behind.
+	 */
+	@Override
+	public boolean commit() {
+		if( txOps != null && ( txClear || txOps.size() > 0 ) ) {
+			synchronized( lock ) {
+				if( pending.size() == 0 && ! pendingClear ) {
+					pendingSince = System.currentTimeMillis();
+				}
+				if( txClear ) {
+					pending.clear();
+					pendingClear = true;
+				}
+				for( Object[] op : txOps ) {
+					merge( (Op)op[0], (EntityIntf)op[1] );
+				}
+				if( entityList != null ) {
+					pendingList = entityList;		// immutable snapshot, not copied
+				}
+				lock.notifyAll();
+			}
+		}
+		rollback();		// reset transaction state
+		return true;
+	}
+
+
+	/**
+	 * Roll back transaction discarding its operations.
+	 */
+	@Override
+	public void rollback() {
+		this.entityList = null;
+		this.txOps = null;
+		this.txClear = false;
+	}
+
+
+	/**
+	 * C - Create new entity in underlying persistence provider.
+	 * @param entity entity to be created.
+	 */
+	@Override
+	public void create( EntityIntf entity ) {
+		record( Op.create, entity );
+	}
+
+
+	/**
+	 * R - Read operations are passed to the wrapped provider after
+	 * pending operations have been flushed.
+	 *
+	 * @param collector functional interface that is called from the
+	 * persistence provider for each collected entity.
+	 *
+	 */
+	@Override
+	public void read( String selector, CollectorIntf collector ) {
+		flush();
+		provider.read( selector, collector );
+	}
+
+	@Override
+	public void readAll( CollectorIntf collector ) {
+		flush();
+		provider.readAll( collector );
+	}
+
+	@Override
+	public void query( Query query, CollectorIntf collector ) {
+		flush();
+		provider.query( query, collector );
+	}
+
+	@Override
+	public boolean exists() {
+		flush();
+		return provider.exists();
+	}
+
+
+	/**
+	 * U - Update operations are used to update entities by the persistence
+	 * provider.
+	 *
+	 * @param entity entity to be updated by persistence provider,
+	 */
+	@Override
+	public void update( EntityIntf entity ) {
+		record( Op.update, entity );
+	}
+
+	@Override
+	public void updateAll( List<? extends EntityIntf> entityList ) {
+		flush();
+		provider.updateAll( entityList );
+	}
+
+
+	/**
+	 * D - Delete operations are used to delete entities by the persistence
+	 * provider.
+	 *
+	 * @param entity entity to be updated by persistence provider,
+	 */
+	@Override
+	public void delete( EntityIntf entity ) {
+		record( Op.delete, entity );
+	}
+
+	@Override
+	public void deleteAll() {
+		if( txOps != null ) {
+			txOps.clear();
+			txClear = true;
+
+		} else {
+			prepare( null );
+			deleteAll();
+			commit();
+		}
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Record operation in current transaction or as single-operation transaction.
+	 */
+	private void record( Op op, EntityIntf entity ) {
+		if( txOps != null ) {
+			txOps.add( new Object[] { op, entity } );
+
+		} else {
+			prepare( null );
+			record( op, entity );
+			commit();
+		}
+	}
+
+	/**
+	 * Merge operation into pending operations (lock must be held).
+	 */
+	private void merge( Op op, EntityIntf entity ) {
+		final String id = entity.getId();
+		Object[] prior = pending.get( id );
+		Op priorOp = prior==null? null : (Op)prior[0];
+
+		if( op == Op.update && priorOp == Op.create ) {
+			op = Op.create;		// entity not yet flushed, remains a create
+
+		} else if( op == Op.delete && priorOp == Op.create ) {
+			pending.remove( id );	// create and delete cancel out
+			return;
+		}
+		pending.remove( id );	// re-insert to keep order of last operation
+		pending.put( id, new Object[] { op, entity } );
+	}
+
+	/**
+	 * Background thread that waits for pending operations to become due.
+	 */
+	private void runFlusher() {
+		while( running ) {
+			boolean due = false;
+			synchronized( lock ) {
+				try {
+					if( pending.size() == 0 && ! pendingClear ) {
+						lock.wait();
+
+					} else {
+						long wait = pendingSince + maxDelay - System.currentTimeMillis();
+						if( wait <= 0 || pending.size() >= maxPending ) {
+							due = true;
+						} else {
+							lock.wait( wait );
+						}
+					}
+				} catch( InterruptedException e ) {
+					running = false;
+				}
+			}
+			if( due ) {
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Flush pending operations in one transaction of the wrapped provider.
+	 * Operations are kept pending for the next flush when the transaction fails.
+	 * Flushes are serialized on flushLock.
+	 */
+	private void flush() {
+		synchronized( flushLock ) {
+			flushPending();
+		}
+	}
+
+	private void flushPending() {
+		LinkedHashMap<String,Object[]> ops;
+		boolean clear;
+		List<? extends EntityIntf> list;
+		synchronized( lock ) {
+			if( pending.size() == 0 && ! pendingClear ) {
+				return;
+			}
+			ops = pending;
+			clear = pendingClear;
+			list = pendingList;
+			pending = new LinkedHashMap<String,Object[]>();
+			pendingClear = false;
+		}
+
+		provider.prepare( list );
+		if( clear ) {
+			provider.deleteAll();
+		}
+		for( Object[] op : ops.values() ) {
+			EntityIntf entity = (EntityIntf)op[1];
+			switch( (Op)op[0] ) {
+			case create: provider.create( entity ); break;
+			case update: provider.update( entity ); break;
+			case delete: provider.delete( entity ); break;
+			}
+		}
+		if( ! provider.commit() ) {
+			log.error( "write-behind flush of " + ops.size() + " operations failed, retrying.", null );
+			synchronized( lock ) {
+				if( ! pendingClear ) {
+					// re-queue failed operations ahead of operations committed meanwhile,
+					// unless these start with deleteAll() that supersedes failed operations
+					LinkedHashMap<String,Object[]> newer = pending;
+					pending = ops;
+					pendingClear = clear;
+					for( Map.Entry<String,Object[]> entry : newer.entrySet() ) {
+						merge( (Op)entry.getValue()[0], (EntityIntf)entry.getValue()[1] );
+					}
+				}
+				pendingSince = System.currentTimeMillis();
+			}
+		}
+	}
+
+}
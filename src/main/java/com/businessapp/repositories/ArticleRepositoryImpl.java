@@ -14,7 +14,9 @@ class ArticleRepositoryImpl extends GenericMemRepositoryImpl<Article> implements
 
 
 	ArticleRepositoryImpl( List<Article> list ) {
-		super( list );
+		super( list, Article.getIdGenerator() );
+		addIndex( ShortNameIndex, Article::getShortName );
+		addRangeIndex( IdIndex, Article::getId );
 	}
 
 
@@ -13,6 +13,11 @@ import com.businessapp.model.Article;
  */
 public interface ArticleRepositoryIntf extends RepositoryIntf<Article> {
 
+	/**
+	 * Name of secondary index of Articles by short name, use with findBy().
+	 */
+	public static final String ShortNameIndex = "short_name";
+
 
 	/**
 	 * Create a new Article entity that is *not* yet managed in the repository.
@@ -1,8 +1,16 @@
 package com.businessapp.repositories;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
+import com.businessapp.logic.LoggerProvider;
 import com.businessapp.model.Customer;
+import com.businessapp.model.Note;
+import com.businessapp.model.Reservation;
+import com.businessapp.model.Reservation.ReservationStatus;
 
 
 /**
@@ -11,9 +19,55 @@ import com.businessapp.model.Customer;
  *
  */
 class CustomerRepositoryImpl extends GenericMemRepositoryImpl<Customer> implements CustomerRepositoryIntf {
+	private static final LoggerProvider log = LoggerProvider.getLogger( CustomerRepositoryImpl.class );
+
+	/*
+	 * Weights of Customer fields in search ranking.
+	 */
+	static final int NameWeight = 4;
+	static final int FirstNameWeight = 3;
+	static final int ContactWeight = 2;
+	static final int NoteWeight = 1;
+
+	private final Supplier<ReservationRepositoryIntf> reservations;
+	private final ReentrantLock integrityLock;
+	private final TextSearchIndex<Customer> searchIndex;
+
 
 	CustomerRepositoryImpl( List<Customer> list ) {
-		super( list );
+		this( list, () -> null, new ReentrantLock() );
+	}
+
+	/**
+	 * Constructor.
+	 * @param list list<Customer> that is associated with the repository.
+	 * @param reservations supplier of the Reservation repository used for referential
+	 * integrity checks, may supply null if no Reservation repository exists or throw
+	 * IllegalStateException if it cannot be supplied without blocking.
+	 * @param integrityLock lock shared with the Reservation repository that is held
+	 * while Reservations are updated and while Customers are checked and deleted.
+	 */
+	CustomerRepositoryImpl( List<Customer> list, Supplier<ReservationRepositoryIntf> reservations, ReentrantLock integrityLock ) {
+		super( list, Customer.getIdGenerator() );
+		this.reservations = reservations;
+		this.integrityLock = integrityLock;
+		addIndex( StatusIndex, Customer::getStatus );
+		addRangeIndex( IdIndex, Customer::getId );
+
+		this.searchIndex = new TextSearchIndex<Customer>( ( c, fields ) -> {
+			fields.add( c.getName(), NameWeight );
+			fields.add( c.getFirstName(), FirstNameWeight );
+			for( String contact : new ArrayList<String>( c.getContacts() ) ) {
+				fields.add( contact, ContactWeight );
+			}
+			for( Note note : new ArrayList<Note>( c.getNotes() ) ) {
+				fields.add( note.getNoteText(), NoteWeight );
+			}
+		});
+		for( Customer c : findAll() ) {
+			searchIndex.changed( RepositoryListenerIntf.Change.inserted, c );
+		}
+		addListener( searchIndex );
 	}
 
 
@@ -28,4 +82,100 @@ class CustomerRepositoryImpl extends GenericMemRepositoryImpl<Customer> implemen
 		return new Customer( "vorname", "name" );
 	}
 
+
+	/**
+	 * Ranked prefix search over Customer names, contacts and notes.
+	 *
+	 * @param query query text, e.g. "mei ber", each token is matched as prefix.
+	 * @param limit maximum number of results.
+	 * @return best matching Customers, best match first.
+	 */
+	@Override
+	public List<Customer> search( String query, int limit ) {
+		final List<Customer> result = new ArrayList<Customer>();
+		for( String id : searchIndex.search( query, limit ) ) {
+			Customer c = findById( id );
+			if( c != null ) {
+				result.add( c );
+			}
+		}
+		return result;
+	}
+
+
+	/**
+	 * Delete Customers passed as argument from repository as one atomic transaction.
+	 * The transaction is refused if any Customer still has ACTIVE Reservations.
+	 * Reservations cannot be updated between the check and the delete.
+	 *
+	 * @ids list of Customer ids to be deleted from repository.
+	 * @throws IllegalStateException if the delete is refused, no Customer is deleted.
+	 */
+	@Override
+	public void delete( List<String> ids ) {
+		integrityLock.lock();
+		try {
+			checkNoActiveReservations( ids );
+			super.delete( ids );
+
+		} finally {
+			integrityLock.unlock();
+		}
+	}
+
+
+	/**
+	 * Delete all Customers as one atomic transaction. The transaction is refused
+	 * if any Customer still has ACTIVE Reservations.
+	 *
+	 * @throws IllegalStateException if the delete is refused, no Customer is deleted.
+	 */
+	@Override
+	public void deleteAll() {
+		integrityLock.lock();
+		try {
+			final List<String> ids = new ArrayList<String>();
+			for( Customer c : findAll() ) {
+				ids.add( c.getId() );
+			}
+			checkNoActiveReservations( ids );
+			super.deleteAll();
+
+		} finally {
+			integrityLock.unlock();
+		}
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	/**
+	 * Check Customers for ACTIVE Reservations (integrityLock must be held).
+	 * @throws IllegalStateException naming Customers with ACTIVE Reservations.
+	 */
+	private void checkNoActiveReservations( Collection<String> ids ) {
+		if( ids.size() == 0 ) {
+			return;
+		}
+		final ReservationRepositoryIntf reservationRepository = reservations.get();
+		if( reservationRepository == null ) {
+			return;
+		}
+		final List<String> refused = new ArrayList<String>();
+		for( String id : ids ) {
+			for( Reservation r : reservationRepository.findByCustomerId( id ) ) {
+				if( r.getStatus() == ReservationStatus.ACTIVE ) {
+					refused.add( id );
+					break;
+				}
+			}
+		}
+		if( refused.size() > 0 ) {
+			log.error( "==> delete" + refused + " refused, Customers have active reservations.", null );
+			throw new IllegalStateException( "Customers with active reservations cannot be deleted: " + refused );
+		}
+	}
+
 }
@@ -13,6 +13,11 @@ import com.businessapp.model.Customer;
  */
 public interface CustomerRepositoryIntf extends RepositoryIntf<Customer> {
 
+	/**
+	 * Name of secondary index of Customers by CustomerStatus, use with findBy().
+	 */
+	public static final String StatusIndex = "status";
+
 
 	/**
 	 * Create a new Customer entity that is *not* yet managed in the repository.
@@ -42,6 +47,18 @@ public interface CustomerRepositoryIntf extends RepositoryIntf<Customer> {
 	public Customer findById( String id );
 
 
+	/**
+	 * Ranked prefix search over Customer names, contacts and notes, e.g. for a
+	 * search box. Query tokens are matched as prefixes of tokens in these fields,
+	 * Customers must match all query tokens.
+	 * 
+	 * @param query query text, e.g. "mei ber".
+	 * @param limit maximum number of results.
+	 * @return best matching Customers, best match first.
+	 */
+	public List<Customer> search( String query, int limit );
+
+
 	/**
 	 * Update method that sets values of entity passed as argument to an entity
 	 * found in the repository with same id. If no entity with matching id is found,
@@ -60,6 +77,7 @@ public interface CustomerRepositoryIntf extends RepositoryIntf<Customer> {
 	 * Delete entity with matching id from repository.
 	 * 
 	 * @id id of entity to be deleted from repository.
+	 * @throws IllegalStateException if the Customer has ACTIVE Reservations.
 	 */
 	@Override
 	public void delete( String id );
@@ -69,6 +87,7 @@ public interface CustomerRepositoryIntf extends RepositoryIntf<Customer> {
 	 * Delete all entities passed as argument from repository as one atomic transaction.
 	 * 
 	 * @ids list of entities to be deleted from repository.
+	 * @throws IllegalStateException if any Customer has ACTIVE Reservations, none is deleted.
 	 */
 	@Override
 	public void delete( List<String> ids );
@@ -77,6 +96,7 @@ public interface CustomerRepositoryIntf extends RepositoryIntf<Customer> {
 	/**
 	 * Delete all entities from repository as one atomic transaction. The result
 	 * is an empty repository.
+	 * @throws IllegalStateException if any Customer has ACTIVE Reservations, none is deleted.
 	 */
 	@Override
 	public void deleteAll();
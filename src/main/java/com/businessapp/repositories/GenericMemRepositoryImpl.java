@@ -1,18 +1,47 @@
 package com.businessapp.repositories;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.businessapp.logic.IDGenerator;
 import com.businessapp.logic.LoggerProvider;
 import com.businessapp.model.EntityIntf;
 import com.businessapp.persistence.PersistenceProviderIntf;
+import com.businessapp.persistence.Query;
+import com.businessapp.repositories.RepositoryListenerIntf.Change;
 
 
 /**
  * Local abstract class that implements the RepositoryIntf<E> interface based
  * on a simple transient (in-memory) List<E> implementation.
- * 
+ *
+ * The repository is thread-safe such that loads, exports and GUI edits can run
+ * in parallel. Lookups by id are lock-free reads from the primary key index
+ * (see PrimaryIndex). Updates and deletes lock the entity id on one of
+ * LockStripes locks. Changes of the entity list take a structural lock, and
+ * transactions of the persistence provider are serialized.
+ *
+ * Entities are kept in an immutable RepositorySnapshot that writers replace with
+ * a new version (copy-on-write epoch). Readers obtain the current snapshot with
+ * findAll() or snapshot() and iterate it without locks.
+ *
+ * Secondary indexes added with addIndex() are maintained by update() and delete().
+ * They are queried with findBy() or by typed queries with find(). Listeners are
+ * notified of changes after they were committed.
+ *
  * @author Sven Graupner
  *
  * @param <E> gneric entity type defined as sub-type of EntityIntf.
@@ -20,8 +49,19 @@ import com.businessapp.persistence.PersistenceProviderIntf;
 abstract class GenericMemRepositoryImpl<E extends EntityIntf> implements RepositoryIntf<E> {
 	private static final LoggerProvider log = LoggerProvider.getLogger( GenericMemRepositoryImpl.class );
 
-	private PersistenceProviderIntf persistenceProvider;
-	private final List<E> list;
+	static final int LockStripes = 64;		// number of id locks, power of 2
+
+	private volatile PersistenceProviderIntf persistenceProvider;
+	private volatile RepositorySnapshot<E> current;		// entities in insertion order, replaced under structure lock
+	private final IDGenerator codec;						// packs ids of entities, may be null
+	private final PrimaryIndex<E> index;				// primary key index: id -> entity
+	private final ConcurrentHashMap<String,SecondaryIndex<E>> indexes;	// secondary indexes by name
+	private final CopyOnWriteArrayList<RepositoryListenerIntf<E>> listeners;
+
+	private final ReentrantLock structure = new ReentrantLock();
+	private final ReentrantLock[] stripes = new ReentrantLock[ LockStripes ];
+	private final Object persistLock = new Object();
+	private final Predicate<String> idsInUse = id -> findById( id ) != null;	// collision check of codec
 
 
 	/**
@@ -29,8 +69,38 @@ abstract class GenericMemRepositoryImpl<E extends EntityIntf> implements Reposit
 	 * @param list list<E> that is associated with the repository.
 	 */
 	GenericMemRepositoryImpl( List<E> list ) {
+		this( list, null );
+	}
+
+	/**
+	 * Constructor.
+	 * @param list list<E> that is associated with the repository.
+	 * @param codec generator of entity ids used to pack ids in indexes, null to keep ids as Strings.
+	 */
+	GenericMemRepositoryImpl( List<E> list, IDGenerator codec ) {
 		this.persistenceProvider = null;
-		this.list = list;
+		this.current = RepositorySnapshot.of( list, 0L );
+		this.codec = codec;
+		this.index = new PrimaryIndex<E>( codec );
+		this.indexes = new ConcurrentHashMap<String,SecondaryIndex<E>>();
+		this.listeners = new CopyOnWriteArrayList<RepositoryListenerIntf<E>>();
+		for( E e : list ) {
+			index.put( e );
+		}
+		for( int i=0; i < stripes.length; i++ ) {
+			stripes[ i ] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Install collision check of the id generator that rejects ids of entities
+	 * in this repository. Called by RepositoryBuilder for the repository instance
+	 * it registers, the check is removed when the repository stops.
+	 */
+	void claimIds() {
+		if( codec != null ) {
+			codec.setCollisionCheck( idsInUse );
+		}
 	}
 
 	/**
@@ -45,15 +115,35 @@ abstract class GenericMemRepositoryImpl<E extends EntityIntf> implements Reposit
 
 	/**
 	 * Basic lifecycle operations inherited from ManagedComponentIntf.
+	 * The persistence provider is started and stopped with the repository,
+	 * stopping the provider flushes operations not yet written.
 	 */
 	@Override
 	public void start() {
+		if( persistenceProvider != null ) {
+			persistenceProvider.start();
+		}
 		log.info( getName() + " started." );
 	}
 
 	@Override
 	public void stop() {
-		list.clear();
+		if( persistenceProvider != null ) {
+			persistenceProvider.stop();
+		}
+		structure.lock();
+		try {
+			publish( RepositorySnapshot.of( Collections.<E>emptyList(), current.getVersion() + 1 ) );
+			index.clear();
+			indexClear();
+
+		} finally {
+			structure.unlock();
+		}
+		notify( Change.cleared, null );
+		if( codec != null ) {
+			codec.removeCollisionCheck( idsInUse );
+		}
 		log.info( getName() + " stopped." );
 	}
 
@@ -68,7 +158,7 @@ abstract class GenericMemRepositoryImpl<E extends EntityIntf> implements Reposit
 	 * A new entity is added to the repository using the update() method.
 	 * Method is abstract because new instance cannot be created with generic type.
 	 * Subclass must implement this method.
-	 * 
+	 *
 	 * @return new entity instance that is not yet managed in the repository.
 	 */
 	@Override
@@ -76,35 +166,202 @@ abstract class GenericMemRepositoryImpl<E extends EntityIntf> implements Reposit
 
 
 	/**
-	 * Read method that returns all entities of the repository.
-	 * 
+	 * Read method that returns all entities of the repository in insertion order.
+	 * The returned list is the current immutable snapshot that is not affected by
+	 * concurrent changes of the repository. Entities are added and removed with
+	 * update() and delete().
+	 *
 	 * @return all entities of the repository.
 	 */
 	@Override
 	public List<E> findAll() {
-		return list;
+		return current;
+	}
+
+
+	/**
+	 * Read method that returns the current version-stamped, immutable snapshot of
+	 * all entities in insertion order. The snapshot can be iterated without locks
+	 * while writers publish new versions.
+	 *
+	 * @return current snapshot of the repository.
+	 */
+	@Override
+	public RepositorySnapshot<E> snapshot() {
+		return current;
 	}
 
 
 	/**
 	 * Read method that returns the repository entity with matching id or null if
 	 * entity is not found.
-	 * 
+	 *
 	 * @return entity with matching id.
 	 */
 	@Override
 	public E findById( String id ) {
-		Collection<E> collection = list;
-		return findById( collection, id );
+		return id==null? null : index.get( id );
 	}
 
-	private E findById( Collection<E> collection, String id ) {
-		for( E e : collection ) {
-			if( e.getId().equals( id ) ) {
-				return e;
-			}
+
+	/**
+	 * Add listener that is notified of changes of the repository.
+	 * @param listener listener to add.
+	 */
+	@Override
+	public void addListener( RepositoryListenerIntf<E> listener ) {
+		listeners.add( listener );
+	}
+
+	/**
+	 * Remove listener.
+	 * @param listener listener to remove.
+	 */
+	@Override
+	public void removeListener( RepositoryListenerIntf<E> listener ) {
+		listeners.remove( listener );
+	}
+
+
+	/**
+	 * Add a secondary index with a key extracted from entities. The index is built
+	 * from entities present in the repository and maintained by update() and delete().
+	 * An index with the same name is replaced. Entities with a null key are not indexed.
+	 *
+	 * @param name name of the index.
+	 * @param keyExtractor function that extracts the key from an entity.
+	 */
+	@Override
+	public void addIndex( String name, Function<? super E,?> keyExtractor ) {
+		addIndex( new SecondaryIndex<E>( name, keyExtractor, false, codec ) );
+	}
+
+
+	/**
+	 * Add an ordered secondary index with a comparable key extracted from entities,
+	 * e.g. a timestamp. Ordered indexes support range queries with findByRange().
+	 *
+	 * @param name name of the index.
+	 * @param keyExtractor function that extracts the key from an entity.
+	 */
+	@Override
+	public void addRangeIndex( String name, Function<? super E,? extends Comparable<?>> keyExtractor ) {
+		addIndex( new SecondaryIndex<E>( name, keyExtractor, true, codec ) );
+	}
+
+
+	/**
+	 * Read method that returns entities with matching key of a secondary index
+	 * in no particular order.
+	 *
+	 * @param name name of the index.
+	 * @param key key to look up.
+	 * @return entities with matching key, empty list if none.
+	 * @throws IllegalArgumentException if no index with name exists.
+	 */
+	@Override
+	public List<E> findBy( String name, Object key ) {
+		return resolve( secondary( name ).get( key ) );
+	}
+
+
+	/**
+	 * Read method that returns entities with keys of an ordered secondary index
+	 * in range [from, to) in ascending key order.
+	 *
+	 * @param name name of the ordered index.
+	 * @param from lower bound (inclusive), null for no lower bound.
+	 * @param to upper bound (exclusive), null for no upper bound.
+	 * @return entities with keys in range, empty list if none.
+	 * @throws IllegalArgumentException if no index with name exists.
+	 * @throws IllegalStateException if index is not ordered.
+	 */
+	@Override
+	public List<E> findByRange( String name, Object from, Object to ) {
+		return resolve( secondary( name ).getRange( from, to ) );
+	}
+
+
+	/**
+	 * Read method that returns entities selected by a typed query. Candidates are
+	 * looked up by id or in a secondary index named like the attribute of an
+	 * equality condition, or taken from a range of an ordered index for range
+	 * conditions. Otherwise the current snapshot is scanned. Candidates from indexes
+	 * are put back into insertion order by the sequence numbers of their entries
+	 * in the primary index, which takes O(k log k) for k candidates.
+	 * All conditions are evaluated on candidates before sorting, offset and limit
+	 * are applied.
+	 *
+	 * @param query query with conditions, sort attribute, offset and limit.
+	 * @return selected entities, empty list if none.
+	 * @throws IllegalArgumentException if the query refers to an unknown attribute.
+	 */
+	@Override
+	public List<E> find( Query query ) {
+		return query.select( candidates( query ) );
+	}
+
+
+	/**
+	 * Read method that returns a page of entities for keyset pagination ordered
+	 * by sort key and id. The page seeks the position of the cursor in the ordered
+	 * index named like the sort key (IdIndex without sort key) and visits only
+	 * entities of the page. Indexes must be declared with addRangeIndex().
+	 *
+	 * @param cursor cursor of the page, PageCursor.first( sortKey ) for the first page.
+	 * @param limit maximum number of entities of the page.
+	 * @return entities of the page, empty list after the last page.
+	 * @throws IllegalArgumentException if no ordered index is declared for the sort key.
+	 */
+	@Override
+	public List<E> findPage( PageCursor cursor, int limit ) {
+		final List<E> page = new ArrayList<E>();
+		if( limit <= 0 ) {
+			return page;
 		}
-		return null;
+		pageIndex( cursor.getSortKey() ).seek( ! cursor.isFirst(), cursor.getValue(), cursor.getId(), limit, id -> {
+			final E e = index.get( id );
+			return e != null && page.add( e );		// skip entities removed meanwhile
+		});
+		return page;
+	}
+
+	/**
+	 * Read method that returns a page of entities following the entity with afterId,
+	 * see findPage( cursor, limit ).
+	 *
+	 * @param afterId id of the last entity of the previous page, null for the first page.
+	 * @param limit maximum number of entities of the page.
+	 * @param sortKey name of an ordered index to sort by, null to sort by id only.
+	 * @return entities of the page, empty list after the last page.
+	 * @throws IllegalArgumentException if no ordered index is declared for sortKey
+	 * or, with a sortKey, the entity with afterId no longer exists.
+	 */
+	@Override
+	public List<E> findPage( String afterId, int limit, String sortKey ) {
+		if( afterId == null ) {
+			return findPage( PageCursor.first( sortKey ), limit );
+		}
+		if( sortKey == null ) {
+			return findPage( new PageCursor( null, null, afterId ), limit );
+		}
+		final E after = findById( afterId );
+		if( after == null ) {
+			throw new IllegalArgumentException( "no entity with id \"" + afterId + "\" to continue after in " + getName() );
+		}
+		return findPage( PageCursor.after( after, sortKey ), limit );
+	}
+
+
+	/**
+	 * Return a lazily evaluated stream over the current snapshot. The stream
+	 * splits the snapshot array without copying and can be made parallel.
+	 *
+	 * @return stream of entities in insertion order.
+	 */
+	@Override
+	public Stream<E> stream() {
+		return StreamSupport.stream( current.spliterator(), false );
 	}
 
 
@@ -113,47 +370,128 @@ abstract class GenericMemRepositoryImpl<E extends EntityIntf> implements Reposit
 	 * found in the repository with same id. If no entity with matching id is found,
 	 * the entity passed as argument is inserted into the repository if the insert
 	 * flag is set to true. If set to false, no update is performed.
-	 * 
+	 *
 	 * @e entity to update values of repository entity with matching id.
 	 * @insert if true, entity is inserted if no entity with matching id exists.
 	 * @return reference to updated entity.
 	 */
 	@Override
 	public E update( E entity, boolean insert ) {
-		E e1 = findById( list, entity.getId() );
-		if( e1 != null ) {
-			if( e1 != entity ) {
-				log.error( "==> duplicate instance update(" + entity.getId() + ").", null );
-				entity = e1;
-			} else {
-				log.info( "==> updated(" + entity.getId() + ")" );
-				final E entity2 = entity;
-				persist( ta -> {
-					ta.prepare( list );
-					ta.update( entity2 );
-					ta.commit();
-				});
+		final ReentrantLock lock = stripe( entity.getId() );
+		lock.lock();
+		try {
+			E e1 = findById( entity.getId() );
+			if( e1 == null && insert ) {
+				structure.lock();
+				try {
+					e1 = index.putIfAbsent( entity );
+					if( e1 == null ) {
+						publish( current.append( Collections.singletonList( entity ), current.getVersion() + 1 ) );
+						indexPut( entity );
+					}
+				} finally {
+					structure.unlock();
+				}
+				if( e1 == null ) {
+					log.info( "==> inserted(" + entity.getId() + ")" );
+					final E entity2 = entity;
+					boolean committed = persist( ta -> {
+						ta.create( entity2 );
+					});
+					if( ! committed ) {
+						// roll back insert
+						structure.lock();
+						try {
+							publish( current.remove( identitySet( Collections.singletonList( entity ) ), current.getVersion() + 1 ) );
+							index.remove( entity.getId() );
+							indexRemove( entity );
+
+						} finally {
+							structure.unlock();
+						}
+						log.error( "==> insert(" + entity.getId() + ") could not be persisted, rolled back.", null );
+					} else {
+						notify( Change.inserted, entity );
+					}
+					return entity;
+				}
 			}
 
-		} else {
-			if( insert ) {
-				log.info( "==> inserted(" + entity.getId() + ")" );
-				list.add( entity );
-				final E entity2 = entity;
-				persist( ta -> {
-					ta.prepare( list );
-					ta.create( entity2 );
-					ta.commit();
-				});
+			if( e1 != null ) {
+				if( e1 != entity ) {
+					log.error( "==> duplicate instance update(" + entity.getId() + ").", null );
+					entity = e1;
+				} else {
+					log.info( "==> updated(" + entity.getId() + ")" );
+					indexPut( entity );		// re-key entity altered in place
+					final E entity2 = entity;
+					boolean committed = persist( ta -> {
+						ta.update( entity2 );
+					});
+					if( ! committed ) {
+						log.error( "==> update(" + entity.getId() + ") could not be persisted.", null );
+					}
+					notify( Change.updated, entity );	// entity was altered in place in any case
+				}
 			}
+			return entity;
+
+		} finally {
+			lock.unlock();
 		}
-		return entity;
+	}
+
+
+	/**
+	 * Bulk load method that inserts a collection of entities in one pass, e.g. when
+	 * entities are restored from a persistence provider at startup. All entities
+	 * are published with one new snapshot, they are neither logged individually nor
+	 * passed to the persistence provider. Entities with an id that already exists are skipped.
+	 *
+	 * @entities entities to insert into the repository.
+	 * @return number of entities inserted.
+	 */
+	@Override
+	public int loadAll( Collection<? extends E> entities ) {
+		return loadAll( entities, true );
+	}
+
+	private int loadAll( Collection<? extends E> entities, boolean notify ) {
+		final List<E> added = new ArrayList<E>( entities.size() );
+		int loaded = 0;
+		int duplicates = 0;
+		structure.lock();
+		try {
+			for( E e : entities ) {
+				if( index.putIfAbsent( e ) == null ) {
+					indexPut( e );
+					added.add( e );
+					loaded++;
+				} else {
+					duplicates++;
+				}
+			}
+			publish( current.append( added, current.getVersion() + 1 ) );
+
+		} finally {
+			structure.unlock();
+		}
+		if( duplicates > 0 ) {
+			log.warn( "==> skipped " + duplicates + " duplicate id(s) in " + getName() + "." );
+		}
+		if( notify ) {
+			for( E e : added ) {
+				notify( Change.inserted, e );
+			}
+		}
+		log.info( "==> loaded(" + loaded + ") into " + getName() + "." );
+		return loaded;
 	}
 
 
 	/**
 	 * Delete entity with matching id from repository.
-	 * 
+	 *
 	 * @id id of entity to be deleted from repository.
 	 */
 	@Override
@@ -164,27 +502,68 @@ abstract class GenericMemRepositoryImpl<E extends EntityIntf> implements Reposit
 
 	/**
 	 * Delete all entities passed as argument from repository as one atomic transaction.
-	 * 
+	 * All deletions are passed to the persistence provider within one transaction
+	 * that is flushed once on commit. If the commit fails, deleted entities are restored.
+	 *
 	 * @ids list of entities to be deleted from repository.
 	 */
 	@Override
 	public void delete( List<String> ids ) {
-		persist( ta -> {
-			ta.prepare( this.list );
-		});
+		// lock stripes of all ids in ascending order to avoid deadlocks
+		TreeMap<Integer,ReentrantLock> locks = new TreeMap<Integer,ReentrantLock>();
 		for( String id : ids ) {
-			E entity = findById( list, id );
-			if( entity != null ) {
-				list.remove( entity );
-				persist( ta -> {
+			if( id != null ) {
+				locks.put( stripeIndex( id ), stripe( id ) );
+			}
+		}
+		for( ReentrantLock lock : locks.values() ) {
+			lock.lock();
+		}
+		try {
+			final List<E> removed = new ArrayList<E>();
+			final List<PrimaryIndex.Entry<E>> entries = new ArrayList<PrimaryIndex.Entry<E>>();
+			final List<E> before;
+			structure.lock();
+			try {
+				for( String id : ids ) {
+					PrimaryIndex.Entry<E> entry = id==null? null : index.remove( id );
+					if( entry != null ) {
+						indexRemove( entry.entity );
+						removed.add( entry.entity );
+						entries.add( entry );
+					}
+				}
+				if( removed.size() == 0 ) {
+					return;
+				}
+				before = current;
+				publish( current.remove( identitySet( removed ), current.getVersion() + 1 ) );	// single pass over list
+
+			} finally {
+				structure.unlock();
+			}
+
+			boolean committed = persist( ta -> {
+				for( E entity : removed ) {
 					ta.delete( entity );
-				});
-				log.info( "==> deleted(" + entity.getId() + ")" );
+				}
+			});
+
+			if( committed ) {
+				for( E entity : removed ) {
+					log.info( "==> deleted(" + entity.getId() + ")" );
+					notify( Change.deleted, entity );
+				}
+			} else {
+				restore( before, entries );
+				log.error( "==> delete of " + removed.size() + " entities could not be persisted, rolled back.", null );
+			}
+
+		} finally {
+			for( ReentrantLock lock : locks.values() ) {
+				lock.unlock();
 			}
 		}
-		persist( ta -> {
-			ta.commit();
-		});
 	}
 
 
@@ -192,20 +571,40 @@ abstract class GenericMemRepositoryImpl<E extends EntityIntf> implements Reposit
 	 * Delete all entities from repository as one atomic transaction. The result
 	 * is an empty repository.
 	 */
-	
-	
 	@Override
 	public void deleteAll() {
-		persist( ta -> {
-			ta.prepare( this.list );
-			ta.deleteAll();
-			list.clear();
-			ta.commit();
-
-		}, () -> {
-			list.clear();
-		});
-		log.info( "==> cleared(" + this.getClass().getSimpleName() + ")" );
+		for( ReentrantLock lock : stripes ) {
+			lock.lock();
+		}
+		try {
+			final List<E> before;
+			structure.lock();
+			try {
+				before = current;
+				publish( RepositorySnapshot.of( Collections.<E>emptyList(), current.getVersion() + 1 ) );
+				index.clear();
+				indexClear();
+
+			} finally {
+				structure.unlock();
+			}
+			boolean committed = persist( ta -> {
+				ta.deleteAll();
+			});
+			if( committed ) {
+				log.info( "==> cleared(" + this.getClass().getSimpleName() + ")" );
+				notify( Change.cleared, null );
+			} else {
+				// roll back
+				loadAll( before, false );
+				log.error( "==> clear(" + this.getClass().getSimpleName() + ") could not be persisted, rolled back.", null );
+			}
+
+		} finally {
+			for( ReentrantLock lock : stripes ) {
+				lock.unlock();
+			}
+		}
 	}
 
 
@@ -218,22 +617,223 @@ abstract class GenericMemRepositoryImpl<E extends EntityIntf> implements Reposit
 		void execute( PersistenceProviderIntf persistenceProvider );
 	}
 
-	@FunctionalInterface
-	interface SimpleIntf {
-		void execute();
+	/**
+	 * Execute operations in one transaction with persistence provider, if one was
+	 * injected. Transactions are serialized and the provider is passed the current
+	 * snapshot that does not change while a transaction is executed.
+	 * @return true if transaction was committed or no persistence provider is present.
+	 */
+	private boolean persist( TransactionIntf tai ) {
+		final PersistenceProviderIntf provider = persistenceProvider;
+		if( provider != null ) {
+			synchronized( persistLock ) {
+				provider.prepare( current );
+				tai.execute( provider );
+				return provider.commit();
+			}
+		}
+		return true;
 	}
 
-	private void persist( TransactionIntf tai ) {
-		persist( tai, null );
+	/**
+	 * Publish new snapshot (structure lock must be held).
+	 */
+	private void publish( RepositorySnapshot<E> snapshot ) {
+		current = snapshot;
 	}
-	private void persist( TransactionIntf tai, SimpleIntf si ) {
-		if( persistenceProvider != null ) {
-			tai.execute( persistenceProvider );
-		} else {
-			if( si != null ) {
-				si.execute();
+
+	/**
+	 * Restore removed entities at their prior positions keeping entities that were
+	 * inserted or removed concurrently. Restored entities keep their sequence numbers.
+	 */
+	private void restore( List<E> before, List<PrimaryIndex.Entry<E>> removed ) {
+		structure.lock();
+		try {
+			final Set<E> removedSet = Collections.newSetFromMap( new IdentityHashMap<E,Boolean>( removed.size() * 2 ) );
+			for( PrimaryIndex.Entry<E> entry : removed ) {
+				removedSet.add( entry.entity );
 			}
+			final Set<E> present = identitySet( current );
+			List<E> restored = new ArrayList<E>( before.size() + removed.size() );
+			for( E e : before ) {
+				if( removedSet.contains( e ) || present.remove( e ) ) {
+					restored.add( e );
+				}
+			}
+			for( E e : current ) {
+				if( present.contains( e ) ) {
+					restored.add( e );		// inserted meanwhile
+				}
+			}
+			publish( RepositorySnapshot.of( restored, current.getVersion() + 1 ) );
+			for( PrimaryIndex.Entry<E> entry : removed ) {
+				index.put( entry.entity, entry.sequence );
+				indexPut( entry.entity );
+			}
+
+		} finally {
+			structure.unlock();
+		}
+	}
+
+	private void addIndex( SecondaryIndex<E> secondary ) {
+		structure.lock();
+		try {
+			for( E e : current ) {
+				secondary.put( e );
+			}
+			indexes.put( secondary.getName(), secondary );
+
+		} finally {
+			structure.unlock();
 		}
 	}
 
+	/**
+	 * Return declared ordered index of sort key for pagination.
+	 */
+	private SecondaryIndex<E> pageIndex( String sortKey ) {
+		final String name = sortKey==null? IdIndex : sortKey;
+		final SecondaryIndex<E> secondary = indexes.get( name );
+		if( secondary == null || ! secondary.isOrdered() ) {
+			throw new IllegalArgumentException( "no ordered index \"" + name + "\" to page by in " + getName() );
+		}
+		return secondary;
+	}
+
+	private SecondaryIndex<E> secondary( String name ) {
+		final SecondaryIndex<E> secondary = indexes.get( name );
+		if( secondary == null ) {
+			throw new IllegalArgumentException( "no index \"" + name + "\" in " + getName() );
+		}
+		return secondary;
+	}
+
+	/**
+	 * Return candidates of query from primary or secondary indexes in insertion
+	 * order, or the current snapshot if no index applies.
+	 */
+	private List<E> candidates( Query query ) {
+		SecondaryIndex<E> range = null;
+		Object from = null, to = null;
+		boolean fromInclusive = true, toInclusive = false;
+		for( Query.Condition c : query.getConditions() ) {
+			final Object value = c.getValue();
+			if( value == null ) {
+				continue;
+			}
+			if( c.getOp() == Query.Op.eq ) {
+				if( "id".equals( c.getField() ) ) {
+					final E e = findById( value.toString() );
+					return e==null? Collections.<E>emptyList() : Collections.singletonList( e );
+				}
+				final SecondaryIndex<E> secondary = indexes.get( c.getField() );
+				if( secondary != null ) {
+					return inOrder( secondary.get( value ) );
+				}
+			}
+			final SecondaryIndex<E> secondary = indexes.get( c.getField() );
+			if( secondary != null && secondary.isOrdered() && ( range == null || range == secondary ) ) {
+				switch( c.getOp() ) {
+				case ge: case gt:
+					range = secondary;
+					from = value;
+					fromInclusive = c.getOp() == Query.Op.ge;
+					break;
+
+				case le: case lt:
+					range = secondary;
+					to = value;
+					toInclusive = c.getOp() == Query.Op.le;
+					break;
+
+				default:
+					break;
+				}
+			}
+		}
+		if( range != null ) {
+			return inOrder( range.getRange( from, fromInclusive, to, toInclusive ) );
+		}
+		return current;
+	}
+
+	/**
+	 * Resolve ids to entities in insertion order by sorting their entries of the
+	 * primary index by sequence number, ids removed meanwhile are skipped.
+	 */
+	private List<E> inOrder( List<String> ids ) {
+		final List<PrimaryIndex.Entry<E>> entries = new ArrayList<PrimaryIndex.Entry<E>>( ids.size() );
+		for( String id : ids ) {
+			final PrimaryIndex.Entry<E> entry = index.entry( id );
+			if( entry != null ) {
+				entries.add( entry );
+			}
+		}
+		entries.sort( ( a, b ) -> Long.compare( a.sequence, b.sequence ) );
+		final List<E> result = new ArrayList<E>( entries.size() );
+		for( PrimaryIndex.Entry<E> entry : entries ) {
+			result.add( entry.entity );
+		}
+		return result;
+	}
+
+	/**
+	 * Resolve ids to entities skipping ids removed meanwhile.
+	 */
+	private List<E> resolve( List<String> ids ) {
+		final List<E> result = new ArrayList<E>( ids.size() );
+		for( String id : ids ) {
+			E e = index.get( id );
+			if( e != null ) {
+				result.add( e );
+			}
+		}
+		return result;
+	}
+
+	private void notify( Change change, E entity ) {
+		for( RepositoryListenerIntf<E> listener : listeners ) {
+			try {
+				listener.changed( change, entity );
+
+			} catch( RuntimeException e ) {
+				log.error( "==> listener failed on " + change + " in " + getName() + ": " + e.getMessage(), e );
+			}
+		}
+	}
+
+	private void indexPut( E entity ) {
+		for( SecondaryIndex<E> secondary : indexes.values() ) {
+			secondary.put( entity );
+		}
+	}
+
+	private void indexRemove( E entity ) {
+		for( SecondaryIndex<E> secondary : indexes.values() ) {
+			secondary.remove( entity );
+		}
+	}
+
+	private void indexClear() {
+		for( SecondaryIndex<E> secondary : indexes.values() ) {
+			secondary.clear();
+		}
+	}
+
+	private Set<E> identitySet( Collection<E> entities ) {
+		final Set<E> set = Collections.newSetFromMap( new IdentityHashMap<E,Boolean>( entities.size() * 2 ) );
+		set.addAll( entities );
+		return set;
+	}
+
+	private int stripeIndex( String id ) {
+		int h = id.hashCode();
+		return ( h ^ ( h >>> 16 ) ) & ( LockStripes - 1 );
+	}
+
+	private ReentrantLock stripe( String id ) {
+		return stripes[ stripeIndex( id ) ];
+	}
+
 }
@@ -0,0 +1,202 @@
+package com.businessapp.repositories;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.businessapp.logic.IDGenerator;
+
+
+/**
+ * Local class of a map from entity ids to values. Ids that are packed into
+ * primitive longs by the IDGenerator of the entity type are kept in one
+ * open-addressing table with parallel key and value arrays and linear probing,
+ * other ids (e.g. imported ids of a different format) in an overflow HashMap.
+ *
+ * The map is not thread-safe. Lookups of packed ids do not fail when the map
+ * is modified concurrently (they may return a wrong result) such that callers
+ * can read optimistically and validate afterwards.
+ *
+ * @param <V> value type.
+ */
+class IdMap<V> {
+	private static final int InitialCapacity = 16;	// power of 2
+	private static final long Empty = IDGenerator.NotPacked;
+
+	/**
+	 * Key and value arrays replaced together on resize.
+	 */
+	private static class Table {
+		final long[] keys;
+		final Object[] values;
+
+		Table( int capacity ) {
+			this.keys = new long[ capacity ];
+			this.values = new Object[ capacity ];
+			Arrays.fill( keys, Empty );
+		}
+	}
+
+	private final IDGenerator codec;			// null if ids are not packed
+	private final HashMap<String,V> overflow;	// ids that are not packed
+	private Table table;
+	private int size;
+
+
+	/**
+	 * Constructor of an empty map.
+	 * @param codec generator that packs ids, null to keep all ids as Strings.
+	 */
+	IdMap( IDGenerator codec ) {
+		this.codec = codec==null || ! codec.isPackable()? null : codec;
+		this.overflow = new HashMap<String,V>();
+		this.table = new Table( InitialCapacity );
+		this.size = 0;
+	}
+
+
+	/**
+	 * Pack id.
+	 * @param id id to pack.
+	 * @return packed id or IDGenerator.NotPacked.
+	 */
+	long pack( String id ) {
+		return codec==null || id==null? Empty : codec.pack( id );
+	}
+
+	V get( String id ) {
+		final long packed = pack( id );
+		return packed==Empty? overflow.get( id ) : getPacked( packed );
+	}
+
+	/**
+	 * Look up value of packed id, safe to call during concurrent modification.
+	 * @param packed packed id.
+	 * @return value or null if not found.
+	 */
+	@SuppressWarnings("unchecked")
+	V getPacked( long packed ) {
+		final Table t = table;
+		final long[] keys = t.keys;
+		final int mask = keys.length - 1;
+		int i = slot( packed, mask );
+		for( int n=0; n < keys.length; n++, i = ( i + 1 ) & mask ) {
+			final long k = keys[ i ];
+			if( k == packed ) {
+				return (V)t.values[ i ];
+			}
+			if( k == Empty ) {
+				break;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Put value for id.
+	 * @return prior value or null.
+	 */
+	@SuppressWarnings("unchecked")
+	V put( String id, V value ) {
+		final long packed = pack( id );
+		if( packed == Empty ) {
+			return overflow.put( id, value );
+		}
+		if( ( size + 1 ) * 2 > table.keys.length ) {
+			resize( table.keys.length * 2 );
+		}
+		final long[] keys = table.keys;
+		final int mask = keys.length - 1;
+		for( int i = slot( packed, mask ); ; i = ( i + 1 ) & mask ) {
+			if( keys[ i ] == packed ) {
+				final V prior = (V)table.values[ i ];
+				table.values[ i ] = value;
+				return prior;
+			}
+			if( keys[ i ] == Empty ) {
+				table.values[ i ] = value;
+				keys[ i ] = packed;
+				size++;
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Remove id. Entries following the removed entry in its probe sequence are
+	 * shifted back such that no tombstones are needed.
+	 * @return removed value or null.
+	 */
+	@SuppressWarnings("unchecked")
+	V remove( String id ) {
+		final long packed = pack( id );
+		if( packed == Empty ) {
+			return overflow.remove( id );
+		}
+		final long[] keys = table.keys;
+		final Object[] values = table.values;
+		final int mask = keys.length - 1;
+		int i = slot( packed, mask );
+		for( ; keys[ i ] != Empty; i = ( i + 1 ) & mask ) {
+			if( keys[ i ] == packed ) {
+				break;
+			}
+		}
+		if( keys[ i ] == Empty ) {
+			return null;
+		}
+		final V prior = (V)values[ i ];
+		keys[ i ] = Empty;
+		values[ i ] = null;
+		size--;
+		for( int j = ( i + 1 ) & mask; keys[ j ] != Empty; j = ( j + 1 ) & mask ) {
+			int home = slot( keys[ j ], mask );
+			// move entry j into gap i unless its home slot lies cyclically in (i, j]
+			if( ( j > i && ( home <= i || home > j ) ) || ( j < i && ( home <= i && home > j ) ) ) {
+				values[ i ] = values[ j ];
+				keys[ i ] = keys[ j ];
+				keys[ j ] = Empty;
+				values[ j ] = null;
+				i = j;
+			}
+		}
+		return prior;
+	}
+
+	void clear() {
+		table = new Table( InitialCapacity );
+		size = 0;
+		overflow.clear();
+	}
+
+	int size() {
+		return size + overflow.size();
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	static int slot( long packed, int mask ) {
+		final long h = packed * 0x9E3779B97F4A7C15L;
+		return (int)( h ^ ( h >>> 32 ) ) & mask;
+	}
+
+	private void resize( int capacity ) {
+		final Table old = table;
+		final Table t = new Table( capacity );
+		final int mask = capacity - 1;
+		for( int k=0; k < old.keys.length; k++ ) {
+			if( old.keys[ k ] != Empty ) {
+				int i = slot( old.keys[ k ], mask );
+				while( t.keys[ i ] != Empty ) {
+					i = ( i + 1 ) & mask;
+				}
+				t.keys[ i ] = old.keys[ k ];
+				t.values[ i ] = old.values[ k ];
+			}
+		}
+		table = t;
+	}
+
+}
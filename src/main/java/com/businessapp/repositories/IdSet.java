@@ -0,0 +1,160 @@
+package com.businessapp.repositories;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.function.Consumer;
+
+import com.businessapp.logic.IDGenerator;
+
+
+/**
+ * Local class of a compact set of entity ids used by secondary indexes for
+ * non-unique keys. Ids that are packed into primitive longs by the IDGenerator
+ * of the entity type are kept in one open-addressing table with linear probing
+ * instead of a HashSet with one node and one String object per id. Other ids
+ * are kept in an overflow HashSet.
+ *
+ */
+class IdSet {
+	private static final int InitialCapacity = 4;	// power of 2
+	private static final long Empty = IDGenerator.NotPacked;
+
+	private final IDGenerator codec;		// null if ids are not packed
+	private long[] table;
+	private int size;
+	private HashSet<String> overflow;		// created on first id that is not packed
+
+
+	/**
+	 * Constructor of an empty set.
+	 * @param codec generator that packs ids, null to keep all ids as Strings.
+	 */
+	IdSet( IDGenerator codec ) {
+		this.codec = codec==null || ! codec.isPackable()? null : codec;
+		this.table = new long[ InitialCapacity ];
+		Arrays.fill( table, Empty );
+		this.size = 0;
+		this.overflow = null;
+	}
+
+
+	/**
+	 * Add id to set.
+	 * @param id id to add.
+	 * @return true if id was added, false if id was already contained.
+	 */
+	boolean add( String id ) {
+		final long packed = pack( id );
+		if( packed == Empty ) {
+			if( overflow == null ) {
+				overflow = new HashSet<String>();
+			}
+			return overflow.add( id );
+		}
+		if( ( size + 1 ) * 2 > table.length ) {
+			resize( table.length * 2 );
+		}
+		int mask = table.length - 1;
+		for( int i = IdMap.slot( packed, mask ); ; i = ( i + 1 ) & mask ) {
+			long k = table[ i ];
+			if( k == Empty ) {
+				table[ i ] = packed;
+				size++;
+				return true;
+			}
+			if( k == packed ) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Remove id from set. Entries following the removed entry in its probe
+	 * sequence are shifted back such that no tombstones are needed.
+	 * @param id id to remove.
+	 * @return true if id was removed.
+	 */
+	boolean remove( String id ) {
+		final long packed = pack( id );
+		if( packed == Empty ) {
+			return overflow != null && overflow.remove( id );
+		}
+		int mask = table.length - 1;
+		int i = IdMap.slot( packed, mask );
+		for( ; table[ i ] != Empty; i = ( i + 1 ) & mask ) {
+			if( table[ i ] == packed ) {
+				break;
+			}
+		}
+		if( table[ i ] == Empty ) {
+			return false;
+		}
+		table[ i ] = Empty;
+		size--;
+		for( int j = ( i + 1 ) & mask; table[ j ] != Empty; j = ( j + 1 ) & mask ) {
+			int home = IdMap.slot( table[ j ], mask );
+			// move entry j into gap i unless its home slot lies cyclically in (i, j]
+			if( ( j > i && ( home <= i || home > j ) ) || ( j < i && ( home <= i && home > j ) ) ) {
+				table[ i ] = table[ j ];
+				table[ j ] = Empty;
+				i = j;
+			}
+		}
+		return true;
+	}
+
+	boolean contains( String id ) {
+		final long packed = pack( id );
+		if( packed == Empty ) {
+			return overflow != null && overflow.contains( id );
+		}
+		int mask = table.length - 1;
+		for( int i = IdMap.slot( packed, mask ); table[ i ] != Empty; i = ( i + 1 ) & mask ) {
+			if( table[ i ] == packed ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return size + ( overflow==null? 0 : overflow.size() );
+	}
+
+	void forEach( Consumer<String> action ) {
+		for( long k : table ) {
+			if( k != Empty ) {
+				action.accept( codec.unpack( k ) );
+			}
+		}
+		if( overflow != null ) {
+			overflow.forEach( action );
+		}
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	private long pack( String id ) {
+		return codec==null? Empty : codec.pack( id );
+	}
+
+	private void resize( int capacity ) {
+		long[] old = table;
+		table = new long[ capacity ];
+		Arrays.fill( table, Empty );
+		int mask = capacity - 1;
+		for( long k : old ) {
+			if( k != Empty ) {
+				int i = IdMap.slot( k, mask );
+				while( table[ i ] != Empty ) {
+					i = ( i + 1 ) & mask;
+				}
+				table[ i ] = k;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.businessapp.repositories;
+
+import com.businessapp.model.EntityIntf;
+import com.businessapp.persistence.EntityAttributes;
+import com.businessapp.persistence.Query;
+
+
+/**
+ * Public class of an immutable cursor for keyset pagination with
+ * RepositoryIntf.findPage( cursor, limit ). A cursor holds the sort key and
+ * the position (sort key value, id) of the last entity of the previous page.
+ * Pages continue at that position, also when the entity was deleted or its
+ * sort key value changed meanwhile.
+ *
+ */
+public final class PageCursor {
+
+	private final String sortKey;		// attribute to sort by, null to sort by id only
+	private final Object value;			// normalized sort key value of the last entity
+	private final String id;			// id of the last entity, null for the first page
+
+
+	/**
+	 * Constructor.
+	 * @param sortKey attribute to sort by (see Query), null to sort by id only.
+	 * @param value sort key value of the last entity of the previous page.
+	 * @param id id of the last entity of the previous page, null for the first page.
+	 */
+	public PageCursor( String sortKey, Object value, String id ) {
+		this.sortKey = sortKey;
+		this.value = sortKey==null? id : Query.normalize( value );
+		this.id = id;
+	}
+
+	/**
+	 * Return cursor of the first page.
+	 * @param sortKey attribute to sort by (see Query), null to sort by id only.
+	 * @return cursor of the first page.
+	 */
+	public static PageCursor first( String sortKey ) {
+		return new PageCursor( sortKey, null, null );
+	}
+
+	/**
+	 * Return cursor of the page that follows entity.
+	 * @param last last entity of the previous page.
+	 * @param sortKey attribute to sort by (see Query), null to sort by id only.
+	 * @return cursor of the next page.
+	 * @throws IllegalArgumentException if sortKey is unknown.
+	 */
+	public static PageCursor after( EntityIntf last, String sortKey ) {
+		return new PageCursor( sortKey, sortKey==null? null : EntityAttributes.get( last, sortKey ), last.getId() );
+	}
+
+
+	public String getSortKey() {
+		return sortKey;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Test whether cursor is the cursor of the first page.
+	 * @return true if cursor is the cursor of the first page.
+	 */
+	public boolean isFirst() {
+		return id == null;
+	}
+
+	@Override
+	public String toString() {
+		return "PageCursor[" + ( sortKey==null? "id" : sortKey ) + ( id==null? "" : " after " + value + ", " + id ) + "]";
+	}
+
+}
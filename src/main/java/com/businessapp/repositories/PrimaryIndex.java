@@ -0,0 +1,174 @@
+package com.businessapp.repositories;
+
+import java.util.concurrent.locks.StampedLock;
+
+import com.businessapp.logic.IDGenerator;
+import com.businessapp.model.EntityIntf;
+
+
+/**
+ * Local class of the primary key index of a repository that maps ids to
+ * entities. Ids are kept packed as primitive longs in an IdMap where possible.
+ * Each entry carries an insertion sequence number that ascends in insertion
+ * order such that entities looked up in other indexes can be put back into
+ * insertion order without a pass over the repository.
+ *
+ * Lookups of packed ids are optimistic reads of a StampedLock that take no lock
+ * unless a writer interfered, other lookups take the read lock. Modifications
+ * take the write lock.
+ *
+ * @param <E> entity type.
+ */
+class PrimaryIndex<E extends EntityIntf> {
+
+	/**
+	 * Immutable entry of an entity with its insertion sequence number.
+	 */
+	static final class Entry<E> {
+		final E entity;
+		final long sequence;
+
+		Entry( E entity, long sequence ) {
+			this.entity = entity;
+			this.sequence = sequence;
+		}
+	}
+
+	private final IdMap<Entry<E>> ids;
+	private final StampedLock lock;
+	private long nextSequence;		// guarded by write lock
+
+
+	/**
+	 * Constructor of an empty index.
+	 * @param codec generator that packs ids, null to keep all ids as Strings.
+	 */
+	PrimaryIndex( IDGenerator codec ) {
+		this.ids = new IdMap<Entry<E>>( codec );
+		this.lock = new StampedLock();
+		this.nextSequence = 0L;
+	}
+
+
+	/**
+	 * Return entity with id.
+	 * @param id id to look up.
+	 * @return entity with id or null if not found.
+	 */
+	E get( String id ) {
+		final Entry<E> entry = entry( id );
+		return entry==null? null : entry.entity;
+	}
+
+	/**
+	 * Return entry of id.
+	 * @param id id to look up.
+	 * @return entry with entity and insertion sequence number or null if not found.
+	 */
+	Entry<E> entry( String id ) {
+		if( id == null ) {
+			return null;
+		}
+		final long packed = ids.pack( id );
+		if( packed != IDGenerator.NotPacked ) {
+			final long stamp = lock.tryOptimisticRead();
+			final Entry<E> e = ids.getPacked( packed );
+			if( lock.validate( stamp ) ) {
+				return e;
+			}
+		}
+		final long stamp = lock.readLock();
+		try {
+			return ids.get( id );
+
+		} finally {
+			lock.unlockRead( stamp );
+		}
+	}
+
+	/**
+	 * Put entity under its id with the next insertion sequence number.
+	 * @return entity previously indexed under the id or null.
+	 */
+	E put( E entity ) {
+		final long stamp = lock.writeLock();
+		try {
+			return entity( ids.put( entity.getId(), new Entry<E>( entity, nextSequence++ ) ) );
+
+		} finally {
+			lock.unlockWrite( stamp );
+		}
+	}
+
+	/**
+	 * Put entity under its id with a prior insertion sequence number, e.g. when
+	 * a removed entity is restored at its prior position.
+	 * @return entity previously indexed under the id or null.
+	 */
+	E put( E entity, long sequence ) {
+		final long stamp = lock.writeLock();
+		try {
+			return entity( ids.put( entity.getId(), new Entry<E>( entity, sequence ) ) );
+
+		} finally {
+			lock.unlockWrite( stamp );
+		}
+	}
+
+	/**
+	 * Put entity under its id unless the id is indexed.
+	 * @return entity indexed under the id or null if entity was put.
+	 */
+	E putIfAbsent( E entity ) {
+		final long stamp = lock.writeLock();
+		try {
+			final Entry<E> prior = ids.get( entity.getId() );
+			if( prior == null ) {
+				ids.put( entity.getId(), new Entry<E>( entity, nextSequence++ ) );
+			}
+			return entity( prior );
+
+		} finally {
+			lock.unlockWrite( stamp );
+		}
+	}
+
+	/**
+	 * Remove id.
+	 * @return removed entry or null.
+	 */
+	Entry<E> remove( String id ) {
+		final long stamp = lock.writeLock();
+		try {
+			return ids.remove( id );
+
+		} finally {
+			lock.unlockWrite( stamp );
+		}
+	}
+
+	void clear() {
+		final long stamp = lock.writeLock();
+		try {
+			ids.clear();
+
+		} finally {
+			lock.unlockWrite( stamp );
+		}
+	}
+
+	int size() {
+		final long stamp = lock.readLock();
+		try {
+			return ids.size();
+
+		} finally {
+			lock.unlockRead( stamp );
+		}
+	}
+
+	private static <E> E entity( Entry<E> entry ) {
+		return entry==null? null : entry.entity;
+	}
+
+}
@@ -1,7 +1,17 @@
 package com.businessapp.repositories;
 
+import java.io.UncheckedIOException;
 import java.util.*;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.businessapp.logic.IDGenerator;
+import com.businessapp.logic.LoggerProvider;
 import com.businessapp.logic.ManagedComponentIntf;
 import com.businessapp.model.Article;
 import com.businessapp.model.Customer;
@@ -23,6 +33,7 @@ import com.businessapp.persistence.PersistenceProviderFactory.PersistenceSelecto
  *
  */
 public class RepositoryBuilder implements ManagedComponentIntf {
+	private static final LoggerProvider log = LoggerProvider.getLogger( RepositoryBuilder.class );
 	private static RepositoryBuilder _singleton = getInstance();
 
 //	private final CustomerRepositoryIntf customerRepository;
@@ -31,6 +42,18 @@ public class RepositoryBuilder implements ManagedComponentIntf {
 
 	public static final String DataPath	= "data/";
 
+	/*
+	 * Write-behind settings: maximum delay (msec) and maximum number of pending
+	 * operations before a flush.
+	 */
+	static final long WriteBehindMaxDelay	= 500L;
+	static final int WriteBehindMaxPending	= 1000;
+
+	/*
+	 * Maximum number of repositories that are started in parallel.
+	 */
+	static final int StartupThreads		= 4;
+
 	/*
 	 * List of repository names.
 	 */
@@ -39,14 +62,30 @@ public class RepositoryBuilder implements ManagedComponentIntf {
 	public static final String Reservation = "Reservation";
 
 	/*
-	 * List of repository configurations.
+	 * List of repository configurations. Repositories are started in parallel
+	 * unless they depend on other repositories. By default repositories are
+	 * loaded at start() and write synchronously. Configurations may opt into
+	 * lazy loading (started on first access or by preload()) and write-behind.
 	 */
 	private final List<RepositoryConfiguration> repoConfigList;
 
 	/*
-	 * Map of repository instances.
+	 * Map of started repository instances.
+	 */
+	private final ConcurrentHashMap<String,RepositoryIntf<?>> repoMap;
+
+	/*
+	 * Futures of scheduled repository starts and executor that runs them,
+	 * guarded by this, executor is null when RepositoryBuilder is not started.
 	 */
-	private final HashMap<String,RepositoryIntf<?>> repoMap;
+	private final HashMap<String,CompletableFuture<Void>> started;
+	private ExecutorService executor;
+
+	/*
+	 * Lock shared by Customer and Reservation repositories such that Customers
+	 * are not deleted while Reservations referring to them are updated.
+	 */
+	private final ReentrantLock integrityLock = new ReentrantLock();
 
 	/**
 	 * Private constructor as part of singleton pattern that initializes
@@ -77,11 +116,14 @@ public class RepositoryBuilder implements ManagedComponentIntf {
 			new RepositoryConfiguration(
 				Reservation,
 				PersistenceSelector.JSONSerialization,
-				this::buildReservationFixture
+				this::buildReservationFixture,
+				Customer, Article		// fixture refers to Customers and Articles
 			)
 		);
 
-		repoMap = new HashMap<String,RepositoryIntf<?>>();
+		repoMap = new ConcurrentHashMap<String,RepositoryIntf<?>>();
+		started = new HashMap<String,CompletableFuture<Void>>();
+		executor = null;
 
 	}
 
@@ -101,7 +143,10 @@ public class RepositoryBuilder implements ManagedComponentIntf {
 
 	/**
 	 * Start RepositoryBuilder.
-	 * Creates all configured repository instances.
+	 * Creates all configured repository instances that are not lazy. Each
+	 * repository is started on a bounded executor as soon as the repositories it
+	 * depends on have been started such that independent repositories load in
+	 * parallel. Returns when all non-lazy repositories have been started.
 	 */
 	@Override
 	public void start() {
@@ -122,33 +167,173 @@ public class RepositoryBuilder implements ManagedComponentIntf {
 		// articleRepository.stop();
 		// customerRepository.stop();
 		// reservationRepository.stop();
-		for( RepositoryConfiguration repoConfig : repoConfigList ) {
+		IDGenerator.setNodeDirectory( DataPath );		// node ids of time-ordered ids are leased next to the data
+		final long t0 = System.currentTimeMillis();
+		final List<CompletableFuture<Void>> eager = new ArrayList<CompletableFuture<Void>>();
+		synchronized( this ) {
+			if( executor == null ) {
+				final AtomicInteger threadCount = new AtomicInteger( 0 );
+				executor = Executors.newFixedThreadPool( Math.min( StartupThreads, repoConfigList.size() ), r -> {
+					Thread t = new Thread( r, getName() + "-" + threadCount.incrementAndGet() );
+					t.setDaemon( true );
+					return t;
+				});
+			}
+			for( RepositoryConfiguration repoConfig : repoConfigList ) {
+				if( ! repoConfig.isLazy() ) {
+					eager.add( schedule( repoConfig, new HashSet<String>() ) );
+				}
+			}
+		}
+		join( CompletableFuture.allOf( eager.toArray( new CompletableFuture<?>[ eager.size() ] ) ) );
+		log.info( "==> " + eager.size() + " repositories started in " + ( System.currentTimeMillis() - t0 ) + " msec." );
+	}
 
-			switch( repoConfig.getName() ) {
 
-			case Customer:
-				configure( repoConfig, new CustomerRepositoryImpl( new ArrayList<Customer>() ), Customer.class );
-				break;
+	/**
+	 * Load a repository in the background if it has not been started, e.g. when
+	 * a GUI tab is opened. Repositories it depends on are started first.
+	 * @param name name of the repository
+	 * @return future that completes when the repository has been started
+	 * @throws IllegalStateException if RepositoryBuilder is not started or name is unknown
+	 */
+	public synchronized CompletableFuture<Void> load( String name ) {
+		if( executor == null ) {
+			throw new IllegalStateException( getName() + " is not started" );
+		}
+		return schedule( configuration( name ), new HashSet<String>() );
+	}
 
-			case Article:
-				configure( repoConfig, new ArticleRepositoryImpl( new ArrayList<Article>() ), Article.class );
-				break;
 
-			case Reservation:
-				configure( repoConfig, new ReservationRepositoryImpl( new ArrayList<Reservation>() ), Reservation.class );
-				break;
+	/**
+	 * Start all lazy repositories that have not been started yet in the background,
+	 * e.g. after the GUI is shown. Returns without waiting.
+	 */
+	public synchronized void preload() {
+		if( executor != null ) {
+			for( RepositoryConfiguration repoConfig : repoConfigList ) {
+				schedule( repoConfig, new HashSet<String>() );
 			}
+			log.info( "==> preloading repositories." );
 		}
 	}
 
 
 	/*
-	 * Private method that configures a new repository instance.
+	 * Private method that schedules start of a repository after the repositories
+	 * it depends on. Returns future that completes when the repository has started.
+	 * Called with this locked.
 	 */
-	@SuppressWarnings({"unchecked","rawtypes"})
-	private void configure( RepositoryConfiguration repoConfig, RepositoryIntf<?> repository, Class<? extends EntityIntf> clazz ) {
+	private CompletableFuture<Void> schedule( RepositoryConfiguration repoConfig, Set<String> path ) {
+		final String name = repoConfig.getName();
+		CompletableFuture<Void> future = started.get( name );
+		if( future == null ) {
+			if( ! path.add( name ) ) {
+				throw new IllegalStateException( "cyclic repository dependency: " + path + " -> " + name );
+			}
+			final List<CompletableFuture<Void>> deps = new ArrayList<CompletableFuture<Void>>();
+			for( String dep : repoConfig.getDependsOn() ) {
+				deps.add( schedule( configuration( dep ), path ) );
+			}
+			path.remove( name );
+			future = CompletableFuture.allOf( deps.toArray( new CompletableFuture<?>[ deps.size() ] ) )
+				.thenRunAsync( () -> {
+					final long t0 = System.currentTimeMillis();
+					switch( name ) {
+
+					case Customer:
+						configure( repoConfig, new CustomerRepositoryImpl( new ArrayList<Customer>(), this::reservationsForCheck, integrityLock ), Customer.class );
+						break;
+
+					case Article:
+						configure( repoConfig, new ArticleRepositoryImpl( new ArrayList<Article>() ), Article.class );
+						break;
+
+					case Reservation:
+						configure( repoConfig, new ReservationRepositoryImpl( new ArrayList<Reservation>(), integrityLock ), Reservation.class );
+						break;
+					}
+					RepositoryIntf<?> repository = repoMap.get( name );
+					log.info( "==> " + name + " repository started in " + ( System.currentTimeMillis() - t0 ) + " msec ("
+						+ ( repository==null? 0 : repository.findAll().size() ) + " entities)." );
+				}, executor );
+			started.put( name, future );
+		}
+		return future;
+	}
 
-		repoMap.put( repoConfig.getName(), repository );
+	/*
+	 * Private method that returns started repository by name, lazy repositories
+	 * are started and awaited on first access.
+	 */
+	private RepositoryIntf<?> repository( String name ) {
+		RepositoryIntf<?> repository = repoMap.get( name );
+		if( repository == null ) {
+			CompletableFuture<Void> future;
+			synchronized( this ) {
+				future = executor==null? null : schedule( configuration( name ), new HashSet<String>() );
+			}
+			if( future != null ) {
+				join( future );
+				repository = repoMap.get( name );
+			}
+		}
+		return repository;
+	}
+
+	/*
+	 * Private method that returns the Reservation repository for integrity checks
+	 * of the Customer repository without blocking the calling (GUI) thread. While
+	 * Reservations are not loaded, the check is refused and loading is started.
+	 */
+	private ReservationRepositoryIntf reservationsForCheck() {
+		RepositoryIntf<?> repository = repoMap.get( Reservation );
+		if( repository == null ) {
+			synchronized( this ) {
+				if( executor != null ) {
+					schedule( configuration( Reservation ), new HashSet<String>() );
+				}
+			}
+			throw new IllegalStateException( "Reservations are not loaded yet, try again." );
+		}
+		return (ReservationRepositoryIntf)repository;
+	}
+
+	/*
+	 * Private method that waits for future and rethrows the cause of a failure.
+	 */
+	private void join( CompletableFuture<Void> future ) {
+		try {
+			future.join();
+
+		} catch( CompletionException e ) {
+			Throwable cause = e.getCause()==null? e : e.getCause();
+			log.error( "==> starting repositories failed: " + cause.getMessage(), e );
+			throw cause instanceof RuntimeException? (RuntimeException)cause : e;
+		}
+	}
+
+	/*
+	 * Private method that returns repository configuration by name.
+	 */
+	private RepositoryConfiguration configuration( String name ) {
+		for( RepositoryConfiguration repoConfig : repoConfigList ) {
+			if( repoConfig.getName().equals( name ) ) {
+				return repoConfig;
+			}
+		}
+		throw new IllegalStateException( "no repository configuration \"" + name + "\"" );
+	}
+
+
+	/*
+	 * Private method that configures a new repository instance. The repository
+	 * is registered when it has been started. Fixtures are only built when the
+	 * provider has no stored data. Stored data that cannot be read aborts the
+	 * start of the repository, it is never replaced by fixtures.
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private void configure( RepositoryConfiguration repoConfig, GenericMemRepositoryImpl<?> repository, Class<? extends EntityIntf> clazz ) {
 
 		String path = DataPath + repoConfig.getName();
 		PersistenceProviderIntf provider = PersistenceProviderFactory.getInstance(
@@ -156,37 +341,63 @@ public class RepositoryBuilder implements ManagedComponentIntf {
 			path,
 			clazz
 		);
-		repository.findAll().clear();
-
-		provider.readAll( e -> {
-			((RepositoryIntf)repository).update( e, true );
-		});
-
-		repository.inject( provider );
+		if( repoConfig.isWriteBehind() ) {
+			provider = PersistenceProviderFactory.getWriteBehindInstance( provider, WriteBehindMaxDelay, WriteBehindMaxPending );
+		}
+		repository.deleteAll();
+
+		final boolean stored = provider.exists();
+		List<EntityIntf> loaded = new ArrayList<EntityIntf>();
+		try {
+			provider.readAll( e -> {
+				loaded.add( e );
+			});
+		} catch( UncheckedIOException e ) {
+			throw new IllegalStateException( "data of " + repoConfig.getName() + " repository could not be read ("
+				+ path + "), fix or remove the data file: " + e.getMessage(), e );
+		}
+		((RepositoryIntf)repository).loadAll( loaded );
+		repository.claimIds();		// new ids, also of fixtures, must not collide with ids of this instance
 
-		if( repository.findAll().size() <= 0 ) {
+		if( ! stored ) {
 
 			repoConfig.buildFixture( repository );
 
 			provider.updateAll( (List<? extends EntityIntf>)repository.findAll() );
 		}
 
+		repository.inject( provider );
+
 		repository.start();
+
+		repoMap.put( repoConfig.getName(), repository );
 	}
 
 
 	/**
 	 * Stop RepositoryBuilder.
-	 * Stops all repository instances.
+	 * Stops all repository instances. Scheduled starts of lazy repositories
+	 * that have not begun are dropped. The node id of time-ordered ids is released.
 	 */
 	@Override
 	public void stop() {
+		synchronized( this ) {
+			for( CompletableFuture<Void> future : started.values() ) {
+				future.cancel( false );		// drop starts that have not begun
+			}
+			started.clear();
+			if( executor != null ) {
+				executor.shutdown();
+				executor = null;
+			}
+		}
 		for( RepositoryConfiguration repoConfig : repoConfigList ) {
 			RepositoryIntf<?> repo = repoMap.get( repoConfig.getName() );
 			if( repo != null ) {
 				repo.stop();
 			}
 		}
+		IDGenerator.releaseNode();
 	}
 
 
@@ -205,7 +416,7 @@ public class RepositoryBuilder implements ManagedComponentIntf {
 	 * @return CustomerRepository instance
 	 */
 	public CustomerRepositoryIntf getCustomerRepository() {
-		return (CustomerRepositoryIntf)repoMap.get( Customer );
+		return (CustomerRepositoryIntf)repository( Customer );
 	}
 
 	/**
@@ -213,14 +424,14 @@ public class RepositoryBuilder implements ManagedComponentIntf {
 	 * @return ArticleRepository instance
 	 */
 	public ArticleRepositoryIntf getArticleRepository() {
-		return (ArticleRepositoryIntf)repoMap.get( Article );
+		return (ArticleRepositoryIntf)repository( Article );
 	}
 
 	/**
 	 * Getter for ReservationRepository
 	 * @return ReservationRepository instance
 	 */
-	public ReservationRepositoryIntf getReservationRepository() { return (ReservationRepositoryIntf)repoMap.get( Reservation ); }
+	public ReservationRepositoryIntf getReservationRepository() { return (ReservationRepositoryIntf)repository( Reservation ); }
 
 	/*
 	 * Private methods.
@@ -1,5 +1,8 @@
 package com.businessapp.repositories;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import com.businessapp.persistence.PersistenceProviderFactory.PersistenceSelector;
@@ -8,7 +11,9 @@ import com.businessapp.persistence.PersistenceProviderFactory.PersistenceSelecto
 /**
  * Local class of repository configuration information. This includes
  * the name of the repository, a selector of a PersistenceProvider and
- * a static method to initialize an empty repository with mock data.
+ * a static method to initialize an empty repository with mock data and
+ * the names of repositories that must be started before this repository.
+ * Lazy repositories are started on first access instead of at startup.
  * 
  * @author Sven Graupner
  *
@@ -21,18 +26,50 @@ interface BuildFixtureStaticMethodIntf {
 class RepositoryConfiguration {
 	private final String name;
 	private final PersistenceSelector selector;
+	private final boolean writeBehind;
+	private final boolean lazy;
 	private final BuildFixtureStaticMethodIntf buildFixture;
+	private final List<String> dependsOn;
 
 	/**
 	 * Repository configuration constructor.
 	 * @param name name of the repository configuration
 	 * @param selector selector for persistence provider
 	 * @param buildFixture static method that initializes a repository with generated values
+	 * @param dependsOn names of repositories that must be started first
 	 */
-	RepositoryConfiguration( String name, PersistenceSelector selector, BuildFixtureStaticMethodIntf buildFixture ) {
+	RepositoryConfiguration( String name, PersistenceSelector selector, BuildFixtureStaticMethodIntf buildFixture, String... dependsOn ) {
+		this( name, selector, false, buildFixture, dependsOn );
+	}
+
+	/**
+	 * Repository configuration constructor.
+	 * @param name name of the repository configuration
+	 * @param selector selector for persistence provider
+	 * @param writeBehind if true, persistence provider is wrapped with a write-behind provider
+	 * @param buildFixture static method that initializes a repository with generated values
+	 * @param dependsOn names of repositories that must be started first
+	 */
+	RepositoryConfiguration( String name, PersistenceSelector selector, boolean writeBehind, BuildFixtureStaticMethodIntf buildFixture, String... dependsOn ) {
+		this( name, selector, writeBehind, false, buildFixture, dependsOn );
+	}
+
+	/**
+	 * Repository configuration constructor.
+	 * @param name name of the repository configuration
+	 * @param selector selector for persistence provider
+	 * @param writeBehind if true, persistence provider is wrapped with a write-behind provider
+	 * @param lazy if true, repository is started on first access rather than at startup
+	 * @param buildFixture static method that initializes a repository with generated values
+	 * @param dependsOn names of repositories that must be started first
+	 */
+	RepositoryConfiguration( String name, PersistenceSelector selector, boolean writeBehind, boolean lazy, BuildFixtureStaticMethodIntf buildFixture, String... dependsOn ) {
 		this.name = name;
 		this.selector = selector;
+		this.writeBehind = writeBehind;
+		this.lazy = lazy;
 		this.buildFixture = buildFixture;
+		this.dependsOn = Collections.unmodifiableList( Arrays.asList( dependsOn ) );
 	}
 
 	/**
@@ -51,12 +88,43 @@ class RepositoryConfiguration {
 		return selector;
 	}
 
+	/**
+	 * Getter for write-behind flag.
+	 * @return true if persistence provider is wrapped with a write-behind provider
+	 */
+	boolean isWriteBehind() {
+		return writeBehind;
+	}
+
+	/**
+	 * Getter for lazy flag.
+	 * @return true if repository is started on first access rather than at startup
+	 */
+	boolean isLazy() {
+		return lazy;
+	}
+
+	/**
+	 * Getter for names of repositories this repository depends on.
+	 * @return names of repositories that must be started first
+	 */
+	List<String> getDependsOn() {
+		return dependsOn;
+	}
+
 	/**
 	 * Getter for static method that initializes a repository with generated values.
+	 * Generated entities are inserted with update() to keep the repository index
+	 * consistent.
 	 * @param repository repository instance into which generated values are inserted
 	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
 	void buildFixture( RepositoryIntf<?> repository ) {
-		buildFixture.build( repository.findAll() );
+		List fixture = new ArrayList();
+		buildFixture.build( fixture );
+		for( Object e : fixture ) {
+			((RepositoryIntf)repository).update( e, true );
+		}
 	}
 
 }
@@ -1,9 +1,13 @@
 package com.businessapp.repositories;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import com.businessapp.logic.ManagedComponentIntf;
 import com.businessapp.persistence.PersistenceProviderIntf;
+import com.businessapp.persistence.Query;
 
 
 /**
@@ -14,6 +18,12 @@ import com.businessapp.persistence.PersistenceProviderIntf;
  */
 public interface RepositoryIntf<E> extends ManagedComponentIntf {
 
+	/**
+	 * Name of the ordered index of entities by id that findPage() uses when no
+	 * sort key is given.
+	 */
+	public static final String IdIndex = "id";
+
 	/**
 	 * Injection of a persistence provider enables the repository to save its content
 	 * to a persistence media and restore from there.
@@ -37,6 +47,16 @@ public interface RepositoryIntf<E> extends ManagedComponentIntf {
 	public List<E> findAll();
 
 
+	/**
+	 * Read method that returns a version-stamped, immutable snapshot of all entities
+	 * of the repository. The snapshot can be iterated without locks and is not
+	 * affected by subsequent changes of the repository.
+	 * 
+	 * @return current snapshot of the repository.
+	 */
+	public RepositorySnapshot<E> snapshot();
+
+
 	/**
 	 * Read method that returns the repository entity with matching id or null if
 	 * entity is not found.
@@ -46,6 +66,121 @@ public interface RepositoryIntf<E> extends ManagedComponentIntf {
 	public E findById( String id );
 
 
+	/**
+	 * Add listener that is notified of changes of the repository, e.g. to
+	 * maintain derived data structures incrementally.
+	 * 
+	 * @param listener listener to add.
+	 */
+	public void addListener( RepositoryListenerIntf<E> listener );
+
+
+	/**
+	 * Remove listener.
+	 * 
+	 * @param listener listener to remove.
+	 */
+	public void removeListener( RepositoryListenerIntf<E> listener );
+
+
+	/**
+	 * Add a secondary index with a key extracted from entities, e.g. a status.
+	 * The index is maintained by update() and delete().
+	 * 
+	 * @param name name of the index.
+	 * @param keyExtractor function that extracts the key from an entity.
+	 */
+	public void addIndex( String name, Function<? super E,?> keyExtractor );
+
+
+	/**
+	 * Add an ordered secondary index with a comparable key extracted from entities,
+	 * e.g. a timestamp. The index is maintained by update() and delete().
+	 * 
+	 * @param name name of the index.
+	 * @param keyExtractor function that extracts the key from an entity.
+	 */
+	public void addRangeIndex( String name, Function<? super E,? extends Comparable<?>> keyExtractor );
+
+
+	/**
+	 * Read method that returns entities with matching key of a secondary index.
+	 * 
+	 * @param name name of the index.
+	 * @param key key to look up.
+	 * @return entities with matching key, empty list if none.
+	 */
+	public List<E> findBy( String name, Object key );
+
+
+	/**
+	 * Read method that returns entities with keys of an ordered secondary index
+	 * in range [from, to) in ascending key order.
+	 * 
+	 * @param name name of the ordered index.
+	 * @param from lower bound (inclusive), null for no lower bound.
+	 * @param to upper bound (exclusive), null for no upper bound.
+	 * @return entities with keys in range, empty list if none.
+	 */
+	public List<E> findByRange( String name, Object from, Object to );
+
+
+	/**
+	 * Read method that returns entities selected by a typed query. Candidates
+	 * are taken from a secondary index named like an attribute of a condition
+	 * if one exists, all conditions are then evaluated on the candidates.
+	 * Without sort attribute, entities come in insertion order, also when
+	 * candidates were taken from an index.
+	 * 
+	 * @param query query with conditions, sort attribute, offset and limit.
+	 * @return selected entities, empty list if none.
+	 * @throws IllegalArgumentException if the query refers to an unknown attribute.
+	 */
+	public List<E> find( Query query );
+
+
+	/**
+	 * Read method that returns a page of entities for keyset pagination. Entities
+	 * are ordered by the sort key of the cursor and their id, null values first,
+	 * a page holds the entities that follow the position (sort key value, id) of
+	 * the cursor in that order. The next page is read with the cursor
+	 * PageCursor.after( last, sortKey ) of the last entity of a page, it continues
+	 * at that position also when the entity was deleted or altered meanwhile.
+	 * 
+	 * Pages are only read from ordered indexes declared with addRangeIndex(). The
+	 * sort key names the index and the attribute it is keyed on, e.g. "date".
+	 * Without sort key, entities are paged by the index IdIndex.
+	 * 
+	 * @param cursor cursor of the page, PageCursor.first( sortKey ) for the first page.
+	 * @param limit maximum number of entities of the page.
+	 * @return entities of the page, empty list after the last page.
+	 * @throws IllegalArgumentException if no ordered index is declared for the sort key.
+	 */
+	public List<E> findPage( PageCursor cursor, int limit );
+
+	/**
+	 * Read method that returns a page of entities that follow the entity with
+	 * afterId in the order of sortKey and id, see findPage( cursor, limit ).
+	 * 
+	 * @param afterId id of the last entity of the previous page, null for the first page.
+	 * @param limit maximum number of entities of the page.
+	 * @param sortKey name of an ordered index to sort by, null to sort by id only.
+	 * @return entities of the page, empty list after the last page.
+	 * @throws IllegalArgumentException if no ordered index is declared for sortKey
+	 * or, with a sortKey, the entity with afterId no longer exists.
+	 */
+	public List<E> findPage( String afterId, int limit, String sortKey );
+
+
+	/**
+	 * Return a lazily evaluated, sequential stream over the current snapshot of
+	 * the repository. Changes after the call are not seen by the stream.
+	 * 
+	 * @return stream of entities in insertion order.
+	 */
+	public Stream<E> stream();
+
+
 	/**
 	 * Update method that sets values of entity passed as argument to an entity
 	 * found in the repository with same id. If no entity with matching id is found,
@@ -59,6 +194,18 @@ public interface RepositoryIntf<E> extends ManagedComponentIntf {
 	public E update( E e, boolean insert );
 
 
+	/**
+	 * Bulk load method that inserts a collection of entities in one pass, e.g. when
+	 * entities are restored from a persistence provider at startup. Entities are
+	 * neither logged individually nor passed to the persistence provider. Entities
+	 * with an id that already exists in the repository are skipped.
+	 * 
+	 * @entities entities to insert into the repository.
+	 * @return number of entities inserted.
+	 */
+	public int loadAll( Collection<? extends E> entities );
+
+
 	/**
 	 * Delete entity with matching id from repository.
 	 * 
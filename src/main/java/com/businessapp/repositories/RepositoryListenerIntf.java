@@ -0,0 +1,26 @@
+package com.businessapp.repositories;
+
+
+/**
+ * Public interface of a listener that is notified of changes of a repository,
+ * e.g. to maintain derived data structures incrementally. Listeners are called
+ * on the thread that changed the repository and must not change the repository.
+ *
+ * @param <E> entity type.
+ */
+@FunctionalInterface
+public interface RepositoryListenerIntf<E> {
+
+	/**
+	 * Kinds of repository changes.
+	 */
+	public enum Change { inserted, updated, deleted, cleared };
+
+	/**
+	 * Called after the repository has changed.
+	 * @param change kind of change.
+	 * @param entity changed entity, null for cleared.
+	 */
+	public void changed( Change change, E entity );
+
+}
@@ -0,0 +1,120 @@
+package com.businessapp.repositories;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+
+/**
+ * Public class of an immutable, version-stamped view of repository entities in
+ * insertion order. A snapshot does not change when the repository is altered,
+ * writers publish a new snapshot with a higher version instead. Snapshots can
+ * be shared and iterated without locks.
+ *
+ * Snapshots published by appends share one backing array: each snapshot only
+ * sees elements below its own size, which are never overwritten. Removals copy
+ * the remaining elements into a new array.
+ *
+ * The spliterator of a snapshot splits its backing array such that streams over
+ * a snapshot run without copying and in parallel.
+ *
+ * @param <E> entity type.
+ */
+public final class RepositorySnapshot<E> extends AbstractList<E> implements RandomAccess {
+
+	private final Object[] elements;	// shared backing array, elements[0..size) are immutable
+	private final int size;
+	private final long version;
+
+
+	/**
+	 * Private constructor.
+	 */
+	private RepositorySnapshot( Object[] elements, int size, long version ) {
+		this.elements = elements;
+		this.size = size;
+		this.version = version;
+	}
+
+	/**
+	 * Create snapshot with entities of a collection.
+	 * @param entities entities of the snapshot.
+	 * @param version version of the snapshot.
+	 * @return new snapshot.
+	 */
+	static <E> RepositorySnapshot<E> of( Collection<? extends E> entities, long version ) {
+		Object[] elements = entities.toArray();
+		return new RepositorySnapshot<E>( elements, elements.length, version );
+	}
+
+
+	/**
+	 * Return version of the snapshot. Versions increase with every change of the repository.
+	 * @return version of the snapshot.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E get( int i ) {
+		if( i < 0 || i >= size ) {
+			throw new IndexOutOfBoundsException( "index: " + i + ", size: " + size );
+		}
+		return (E)elements[ i ];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Spliterator<E> spliterator() {
+		return (Spliterator<E>)Spliterators.spliterator( elements, 0, size,
+				Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL );
+	}
+
+
+	/*
+	 * Package-private methods to derive new versions, only called by the writer
+	 * holding the repository lock on the most recent snapshot.
+	 */
+
+	/**
+	 * Derive snapshot with entities appended.
+	 */
+	RepositorySnapshot<E> append( Collection<? extends E> entities, long version ) {
+		int newSize = size + entities.size();
+		Object[] a = elements;
+		if( newSize > a.length ) {
+			a = new Object[ Math.max( newSize, a.length + ( a.length >> 1 ) + 8 ) ];
+			System.arraycopy( elements, 0, a, 0, size );
+		}
+		int i = size;
+		for( E e : entities ) {
+			a[ i++ ] = e;
+		}
+		return new RepositorySnapshot<E>( a, newSize, version );
+	}
+
+	/**
+	 * Derive snapshot without entities contained in the (identity) set.
+	 */
+	RepositorySnapshot<E> remove( Set<E> removed, long version ) {
+		Object[] a = new Object[ size ];
+		int n = 0;
+		for( int i=0; i < size; i++ ) {
+			if( ! removed.contains( elements[ i ] ) ) {
+				a[ n++ ] = elements[ i ];
+			}
+		}
+		return new RepositorySnapshot<E>( a, n, version );
+	}
+
+}
@@ -4,16 +4,58 @@ import com.businessapp.model.Reservation;
 
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ReservationRepositoryImpl extends GenericMemRepositoryImpl<Reservation> implements ReservationRepositoryIntf {
 
+    private final ReentrantLock integrityLock;	// shared with the Customer repository
 
     ReservationRepositoryImpl(List<Reservation> list) {
-        super(list);
+        this( list, new ReentrantLock() );
+    }
+
+    /**
+     * Constructor.
+     * @param list list<Reservation> that is associated with the repository.
+     * @param integrityLock lock shared with the Customer repository that is held while
+     * Reservations are updated such that Customers are not deleted concurrently.
+     */
+    ReservationRepositoryImpl(List<Reservation> list, ReentrantLock integrityLock) {
+        super( list, Reservation.getIdGenerator() );
+        this.integrityLock = integrityLock;
+        addIndex( CustomerIdIndex, Reservation::getCustomerId );
+        addRangeIndex( DateIndex, r -> r.getDate()==null? null : r.getDate().getTime() );
+        addRangeIndex( IdIndex, Reservation::getId );
     }
 
     @Override
     public Reservation create() {
         return new Reservation( new Date() );
     }
+
+    /**
+     * Insert or update Reservation while Customers cannot be deleted.
+     */
+    @Override
+    public Reservation update( Reservation r, boolean insert ) {
+        integrityLock.lock();
+        try {
+            return super.update( r, insert );
+
+        } finally {
+            integrityLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Reservation> findByCustomerId( String cid ) {
+        return findBy( CustomerIdIndex, cid );
+    }
+
+    @Override
+    public List<Reservation> findByDateRange( Date from, Date to ) {
+        return findByRange( DateIndex,
+                from==null? null : from.getTime(),
+                to==null? null : to.getTime() );
+    }
 }
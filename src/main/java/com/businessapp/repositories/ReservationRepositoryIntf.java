@@ -2,16 +2,46 @@ package com.businessapp.repositories;
 
 import com.businessapp.model.Reservation;
 
+import java.util.Date;
 import java.util.List;
 
 public interface ReservationRepositoryIntf extends RepositoryIntf<Reservation> {
 
+    /**
+     * Name of secondary index of Reservations by Customer id, use with findBy().
+     */
+    public static final String CustomerIdIndex = "customerId";
+
+    /**
+     * Name of ordered secondary index of Reservations by date (epoch millis), use with findByRange().
+     */
+    public static final String DateIndex = "date";
+
     public Reservation create();
 
     public List<Reservation> findAll();
 
     public Reservation findById( String id );
 
+    /**
+     * Read method that returns Reservations with a date in range [from, to) in
+     * ascending date order, e.g. for daily or weekly reports.
+     *
+     * @param from begin of range (inclusive), null for no lower bound.
+     * @param to end of range (exclusive), null for no upper bound.
+     * @return Reservations in range, empty list if none.
+     */
+    public List<Reservation> findByDateRange( Date from, Date to );
+
+    /**
+     * Read method that returns Reservations of a Customer from the reverse
+     * index Customer id -> Reservation ids.
+     *
+     * @param cid Customer id.
+     * @return Reservations of the Customer, empty list if none.
+     */
+    public List<Reservation> findByCustomerId( String cid );
+
     public Reservation update( Reservation r, boolean insert );
 
     public void delete( String id );
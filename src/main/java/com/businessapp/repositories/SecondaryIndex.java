@@ -0,0 +1,347 @@
+package com.businessapp.repositories;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.businessapp.logic.IDGenerator;
+import com.businessapp.model.EntityIntf;
+import com.businessapp.persistence.Query;
+
+
+/**
+ * Local class of a secondary index that maps keys extracted from entities to
+ * the ids of entities with that key. Ids of non-unique keys are stored in
+ * compact IdSets. The key of each indexed id is kept in a reverse IdMap such that
+ * entities that were altered in place can be re-keyed on update. Both keep ids
+ * packed as primitive longs where the IDGenerator of the entity type allows.
+ *
+ * Ordered indexes keep keys in a TreeMap and answer range queries in
+ * logarithmic time plus the size of the result. They keep the ids of each key
+ * in ascending order (see SortedIds) such that seek() finds the position of a
+ * page cursor in logarithmic time and visits only the ids of the page.
+ *
+ * Keys and bounds are normalized as values of queries (see Query.normalize()),
+ * e.g. enums are indexed by name and numbers of any type as Long or Double such
+ * that they can be looked up with query conditions. Ordered indexes compare keys
+ * as query conditions do (see Query.compareValues()), e.g. an Integer bound is
+ * compared numerically with Long keys. Null keys are not indexed, ordered
+ * indexes keep ids with null keys apart such that seek() can page over all
+ * entities in (key, id) order with null keys first.
+ *
+ * @param <E> entity type.
+ */
+class SecondaryIndex<E extends EntityIntf> {
+
+	private final String name;
+	private final Function<? super E,?> keyExtractor;
+
+	private final IDGenerator codec;				// packs ids, may be null
+	private final Map<Object,IdSet> ids;			// key -> ids, unordered indexes only
+	private final TreeMap<Object,SortedIds> sorted;	// key -> ids in ascending order, ordered indexes only
+	private final IdMap<Object> keys;				// id -> key
+	private final SortedIds nulls;					// ids with null key, ordered indexes only
+
+
+	/**
+	 * Constructor.
+	 * @param name name of the index.
+	 * @param keyExtractor function that extracts the key from an entity.
+	 */
+	SecondaryIndex( String name, Function<? super E,?> keyExtractor ) {
+		this( name, keyExtractor, false, null );
+	}
+
+	/**
+	 * Constructor.
+	 * @param name name of the index.
+	 * @param keyExtractor function that extracts the key from an entity.
+	 * @param ordered if true, keys are ordered and range queries are supported.
+	 * @param codec generator that packs ids, null to keep ids as Strings.
+	 */
+	SecondaryIndex( String name, Function<? super E,?> keyExtractor, boolean ordered, IDGenerator codec ) {
+		this.name = name;
+		this.keyExtractor = keyExtractor;
+		this.codec = codec;
+		this.ids = ordered? null : new HashMap<Object,IdSet>();
+		this.sorted = ordered? new TreeMap<Object,SortedIds>( Query::compareValues ) : null;
+		this.keys = new IdMap<Object>( codec );
+		this.nulls = ordered? new SortedIds() : null;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	boolean isOrdered() {
+		return sorted != null;
+	}
+
+
+	/**
+	 * Index entity or re-key entity whose key has changed.
+	 * @param entity entity to index.
+	 */
+	synchronized void put( E entity ) {
+		final String id = entity.getId();
+		final Object key = Query.normalize( keyExtractor.apply( entity ) );
+		final Object prior = keys.get( id );
+		if( prior != null && prior.equals( key ) ) {
+			return;
+		}
+		if( prior != null ) {
+			unlink( id, prior );
+		}
+		if( key != null ) {
+			keys.put( id, key );
+			if( sorted != null ) {
+				sorted.computeIfAbsent( key, k -> new SortedIds() ).add( id );
+			} else {
+				ids.computeIfAbsent( key, k -> new IdSet( codec ) ).add( id );
+			}
+			if( nulls != null ) {
+				nulls.remove( id );
+			}
+		} else {
+			keys.remove( id );
+			if( nulls != null ) {
+				nulls.add( id );
+			}
+		}
+	}
+
+	/**
+	 * Remove entity from index.
+	 * @param entity entity to remove.
+	 */
+	synchronized void remove( E entity ) {
+		final Object prior = keys.remove( entity.getId() );
+		if( prior != null ) {
+			unlink( entity.getId(), prior );
+		}
+		if( nulls != null ) {
+			nulls.remove( entity.getId() );
+		}
+	}
+
+	synchronized void clear() {
+		if( sorted != null ) {
+			sorted.clear();
+		} else {
+			ids.clear();
+		}
+		keys.clear();
+		if( nulls != null ) {
+			nulls.clear();
+		}
+	}
+
+	/**
+	 * Return ids of entities with key.
+	 * @param key key to look up.
+	 * @return ids of entities with key, empty list if none.
+	 */
+	synchronized List<String> get( Object key ) {
+		final Object k = Query.normalize( key );
+		final List<String> result = new ArrayList<String>();
+		if( sorted != null ) {
+			final SortedIds set = sorted.get( k );
+			if( set != null ) {
+				set.forEach( result::add );
+			}
+		} else {
+			final IdSet set = ids.get( k );
+			if( set != null ) {
+				set.forEach( result::add );
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return ids of entities with keys in range in ascending key order.
+	 * @param from lower bound (inclusive), null for no lower bound.
+	 * @param to upper bound (exclusive), null for no upper bound.
+	 * @return ids of entities with keys in range, empty list if none.
+	 * @throws IllegalStateException if index is not ordered.
+	 */
+	synchronized List<String> getRange( Object from, Object to ) {
+		return getRange( from, true, to, false );
+	}
+
+	/**
+	 * Return ids of entities with keys in range in ascending key order.
+	 * @param from lower bound, null for no lower bound.
+	 * @param fromInclusive if true, lower bound is included.
+	 * @param to upper bound, null for no upper bound.
+	 * @param toInclusive if true, upper bound is included.
+	 * @return ids of entities with keys in range, empty list if none.
+	 * @throws IllegalStateException if index is not ordered.
+	 */
+	synchronized List<String> getRange( Object from, boolean fromInclusive, Object to, boolean toInclusive ) {
+		if( ! isOrdered() ) {
+			throw new IllegalStateException( "index \"" + name + "\" is not ordered" );
+		}
+		final Object lo = Query.normalize( from );
+		final Object hi = Query.normalize( to );
+		final List<String> result = new ArrayList<String>();
+		if( lo != null && hi != null ) {
+			final int c = Query.compareValues( lo, hi );
+			if( c > 0 || ( c == 0 && ! ( fromInclusive && toInclusive ) ) ) {
+				return result;		// empty range, sub maps reject inverted bounds
+			}
+		}
+		NavigableMap<Object,SortedIds> range = sorted;
+		if( lo != null ) {
+			range = range.tailMap( lo, fromInclusive );
+		}
+		if( hi != null ) {
+			range = range.headMap( hi, toInclusive );
+		}
+		for( SortedIds set : range.values() ) {
+			set.forEach( result::add );
+		}
+		return result;
+	}
+
+
+	/**
+	 * Pass ids in ascending order of (key, id), null keys first, that follow the
+	 * position of a page cursor to action until action took limit ids. The position
+	 * is found in logarithmic time, only ids from the position on are visited.
+	 * @param after if true, continue after position (key, afterId), otherwise start
+	 * with the first id.
+	 * @param key key of the position, may be null.
+	 * @param afterId id of the position.
+	 * @param limit maximum number of ids taken.
+	 * @param action function that returns true if it took the id, false to skip it,
+	 * e.g. when the entity was removed meanwhile.
+	 * @throws IllegalStateException if index is not ordered.
+	 */
+	synchronized void seek( boolean after, Object key, String afterId, int limit, Predicate<String> action ) {
+		if( ! isOrdered() ) {
+			throw new IllegalStateException( "index \"" + name + "\" is not ordered" );
+		}
+		final Object k = Query.normalize( key );
+		int taken = 0;
+		if( ! after || k == null ) {
+			taken = nulls.seek( after? afterId : null, limit, action );
+		}
+		NavigableMap<Object,SortedIds> tail = sorted;
+		if( after && k != null ) {
+			tail = tail.tailMap( k, true );
+		}
+		for( Map.Entry<Object,SortedIds> entry : tail.entrySet() ) {
+			if( taken >= limit ) {
+				break;
+			}
+			final boolean atKey = after && k != null && Query.compareValues( entry.getKey(), k ) == 0;
+			taken += entry.getValue().seek( atKey? afterId : null, limit - taken, action );
+		}
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	private void unlink( String id, Object key ) {
+		if( sorted != null ) {
+			final SortedIds set = sorted.get( key );
+			if( set != null && set.remove( id ) && set.isEmpty() ) {
+				sorted.remove( key );
+			}
+		} else {
+			final IdSet set = ids.get( key );
+			if( set != null && set.remove( id ) && set.size() == 0 ) {
+				ids.remove( key );
+			}
+		}
+	}
+
+
+	/**
+	 * Ids of one key of an ordered index in ascending order. A single id, e.g.
+	 * of a unique key, is kept without a set.
+	 */
+	private static final class SortedIds {
+		private String single;			// only id if set is null
+		private TreeSet<String> set;	// ids if more than one id was added
+
+		boolean add( String id ) {
+			if( set != null ) {
+				return set.add( id );
+			}
+			if( single == null ) {
+				single = id;
+				return true;
+			}
+			if( single.equals( id ) ) {
+				return false;
+			}
+			set = new TreeSet<String>();
+			set.add( single );
+			single = null;
+			return set.add( id );
+		}
+
+		boolean remove( String id ) {
+			if( set != null ) {
+				return set.remove( id );
+			}
+			if( single != null && single.equals( id ) ) {
+				single = null;
+				return true;
+			}
+			return false;
+		}
+
+		boolean isEmpty() {
+			return set==null? single == null : set.isEmpty();
+		}
+
+		void forEach( Consumer<String> action ) {
+			if( set != null ) {
+				set.forEach( action );
+			} else if( single != null ) {
+				action.accept( single );
+			}
+		}
+
+		void clear() {
+			single = null;
+			set = null;
+		}
+
+		/**
+		 * Pass ids greater than afterId in ascending order to action until action
+		 * took limit ids.
+		 * @param afterId id to continue after, null to start with the first id.
+		 * @return number of ids taken.
+		 */
+		int seek( String afterId, int limit, Predicate<String> action ) {
+			int taken = 0;
+			if( set != null ) {
+				for( String id : afterId==null? set : set.tailSet( afterId, false ) ) {
+					if( taken >= limit ) {
+						break;
+					}
+					if( action.test( id ) ) {
+						taken++;
+					}
+				}
+			} else if( single != null && limit > 0 && ( afterId == null || single.compareTo( afterId ) > 0 ) ) {
+				taken = action.test( single )? 1 : 0;
+			}
+			return taken;
+		}
+	}
+
+}
@@ -0,0 +1,295 @@
+package com.businessapp.repositories;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.businessapp.model.EntityIntf;
+
+
+/**
+ * Local class of an in-memory inverted index for ranked prefix search over
+ * text fields of entities. Entities are numbered with int document numbers,
+ * numbers of removed entities are recycled through a free list such that
+ * numbers (and scratch arrays indexed by them) are bounded by the number of
+ * entities in the index, a re-indexed entity keeps its number.
+ * Texts are split into lower-case tokens kept in a sorted token dictionary
+ * (acting as token trie) that maps each token to a postings list of document
+ * numbers in ascending order with the weight of the field the token occurred in.
+ *
+ * A query is split into tokens that are matched as prefixes. Documents must
+ * match all query tokens, they are ranked by the sum of the best field weight
+ * per query token (exact token matches count double) and the top-K documents
+ * are selected with a bounded heap.
+ *
+ * The index is updated incrementally as RepositoryListenerIntf of a repository.
+ *
+ * @param <E> entity type.
+ */
+class TextSearchIndex<E extends EntityIntf> implements RepositoryListenerIntf<E> {
+
+	/**
+	 * Functional interface that passes the text fields of an entity with their weights.
+	 */
+	@FunctionalInterface
+	interface TextExtractorIntf<E> {
+		void extract( E entity, TextCollectorIntf collector );
+	}
+
+	@FunctionalInterface
+	interface TextCollectorIntf {
+		void add( String text, int weight );
+	}
+
+	/**
+	 * Postings list: ascending document numbers with parallel weights.
+	 */
+	private static class Postings {
+		int[] docs = new int[ 2 ];
+		int[] weights = new int[ 2 ];
+		int size = 0;
+
+		void put( int doc, int weight ) {
+			int i = Arrays.binarySearch( docs, 0, size, doc );
+			if( i >= 0 ) {
+				weights[ i ] = Math.max( weights[ i ], weight );
+				return;
+			}
+			i = -i - 1;
+			if( size == docs.length ) {
+				docs = Arrays.copyOf( docs, size * 2 );
+				weights = Arrays.copyOf( weights, size * 2 );
+			}
+			System.arraycopy( docs, i, docs, i + 1, size - i );
+			System.arraycopy( weights, i, weights, i + 1, size - i );
+			docs[ i ] = doc;
+			weights[ i ] = weight;
+			size++;
+		}
+
+		void remove( int doc ) {
+			int i = Arrays.binarySearch( docs, 0, size, doc );
+			if( i >= 0 ) {
+				System.arraycopy( docs, i + 1, docs, i, size - i - 1 );
+				System.arraycopy( weights, i + 1, weights, i, size - i - 1 );
+				size--;
+			}
+		}
+	}
+
+	private final TextExtractorIntf<E> extractor;
+
+	private final TreeMap<String,Postings> dictionary;	// token -> postings
+	private final HashMap<String,Integer> docs;			// entity id -> document number
+	private final HashMap<Integer,String> ids;			// document number -> entity id
+	private final HashMap<Integer,String[]> tokens;		// document number -> indexed tokens
+	private int nextDoc;								// highest document number + 1
+	private int[] free = new int[ 16 ];					// recycled document numbers
+	private int freeCount;
+
+	/*
+	 * Scratch arrays indexed by document number reused across searches.
+	 */
+	private int[] score = new int[ 0 ];		// accumulated score
+	private int[] rounds = new int[ 0 ];		// number of query tokens matched + 1
+	private int[] best = new int[ 0 ];		// best weight for current query token
+
+
+	/**
+	 * Constructor.
+	 * @param extractor function that passes the text fields of an entity.
+	 */
+	TextSearchIndex( TextExtractorIntf<E> extractor ) {
+		this.extractor = extractor;
+		this.dictionary = new TreeMap<String,Postings>();
+		this.docs = new HashMap<String,Integer>();
+		this.ids = new HashMap<Integer,String>();
+		this.tokens = new HashMap<Integer,String[]>();
+		this.nextDoc = 0;
+		this.freeCount = 0;
+	}
+
+
+	/**
+	 * Change notification from the repository.
+	 */
+	@Override
+	public synchronized void changed( Change change, E entity ) {
+		switch( change ) {
+		case inserted:
+		case updated:
+			remove( entity.getId() );
+			add( entity );
+			break;
+
+		case deleted:
+			remove( entity.getId() );
+			break;
+
+		case cleared:
+			dictionary.clear();
+			docs.clear();
+			ids.clear();
+			tokens.clear();
+			nextDoc = 0;
+			freeCount = 0;
+			score = new int[ 0 ];
+			rounds = new int[ 0 ];
+			best = new int[ 0 ];
+			break;
+		}
+	}
+
+
+	/**
+	 * Ranked prefix search.
+	 * @param query query text, tokens are matched as prefixes.
+	 * @param limit maximum number of results (top-K).
+	 * @return ids of best matching entities, best match first.
+	 */
+	synchronized List<String> search( String query, int limit ) {
+		final List<String> qtokens = new ArrayList<String>();
+		tokenize( query, qtokens );
+		if( qtokens.size() == 0 || limit <= 0 ) {
+			return new ArrayList<String>();
+		}
+		if( score.length < nextDoc ) {
+			score = new int[ nextDoc + ( nextDoc >> 1 ) ];
+			rounds = new int[ score.length ];
+			best = new int[ score.length ];
+		}
+		int[] candidates = new int[ 16 ];		// documents matching all query tokens so far
+		int count = 0;
+		for( int round=0; round < qtokens.size(); round++ ) {
+			final String qt = qtokens.get( round );
+			int[] touched = new int[ 16 ];
+			int touchedCount = 0;
+			final SortedMap<String,Postings> matches = dictionary.subMap( qt, qt + Character.MAX_VALUE );
+			for( Map.Entry<String,Postings> match : matches.entrySet() ) {
+				final int factor = match.getKey().length() == qt.length()? 2 : 1;
+				final Postings p = match.getValue();
+				for( int i=0; i < p.size; i++ ) {
+					final int doc = p.docs[ i ];
+					if( rounds[ doc ] == round ) {		// matched all prior query tokens
+						final int w = p.weights[ i ] * factor;
+						if( best[ doc ] == 0 ) {
+							if( touchedCount == touched.length ) {
+								touched = Arrays.copyOf( touched, touchedCount * 2 );
+							}
+							touched[ touchedCount++ ] = doc;
+						}
+						if( w > best[ doc ] ) {
+							best[ doc ] = w;
+						}
+					}
+				}
+			}
+			for( int i=0; i < count; i++ ) {
+				if( best[ candidates[ i ] ] == 0 ) {
+					// candidate dropped, reset scratch entries
+					score[ candidates[ i ] ] = 0;
+					rounds[ candidates[ i ] ] = 0;
+				}
+			}
+			for( int i=0; i < touchedCount; i++ ) {
+				final int doc = touched[ i ];
+				score[ doc ] += best[ doc ];
+				rounds[ doc ] = round + 1;
+				best[ doc ] = 0;
+			}
+			candidates = touched;
+			count = touchedCount;
+		}
+
+		// top-K with min-heap on score, ties broken by lower document number
+		final PriorityQueue<int[]> heap = new PriorityQueue<int[]>( limit + 1,
+				( a, b ) -> a[1] != b[1]? Integer.compare( a[1], b[1] ) : Integer.compare( b[0], a[0] ) );
+		for( int i=0; i < count; i++ ) {
+			final int doc = candidates[ i ];
+			if( heap.size() < limit || score[ doc ] > heap.peek()[1] ) {
+				heap.add( new int[] { doc, score[ doc ] } );
+				if( heap.size() > limit ) {
+					heap.poll();
+				}
+			}
+			score[ doc ] = 0;
+			rounds[ doc ] = 0;
+		}
+		final String[] result = new String[ heap.size() ];
+		for( int i = result.length - 1; i >= 0; i-- ) {
+			result[ i ] = ids.get( heap.poll()[0] );
+		}
+		return new ArrayList<String>( Arrays.asList( result ) );
+	}
+
+
+	/*
+	 * Private methods.
+	 */
+
+	private void add( E entity ) {
+		final int doc = freeCount > 0? free[ --freeCount ] : nextDoc++;	// number freed by remove() when re-indexed
+		final HashMap<String,Integer> weights = new HashMap<String,Integer>();
+		final List<String> buf = new ArrayList<String>();
+		extractor.extract( entity, ( text, weight ) -> {
+			buf.clear();
+			tokenize( text, buf );
+			for( String t : buf ) {
+				weights.merge( t, weight, Math::max );
+			}
+		});
+		for( Map.Entry<String,Integer> e : weights.entrySet() ) {
+			dictionary.computeIfAbsent( e.getKey(), k -> new Postings() ).put( doc, e.getValue() );
+		}
+		docs.put( entity.getId(), doc );
+		ids.put( doc, entity.getId() );
+		tokens.put( doc, weights.keySet().toArray( new String[ weights.size() ] ) );
+	}
+
+	private void remove( String id ) {
+		final Integer doc = docs.remove( id );
+		if( doc != null ) {
+			if( freeCount == free.length ) {
+				free = Arrays.copyOf( free, freeCount * 2 );
+			}
+			free[ freeCount++ ] = doc;
+			ids.remove( doc );
+			for( String t : tokens.remove( doc ) ) {
+				final Postings p = dictionary.get( t );
+				if( p != null ) {
+					p.remove( doc );
+					if( p.size == 0 ) {
+						dictionary.remove( t );
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Split text into lower-case tokens of letters and digits.
+	 */
+	private static void tokenize( String text, List<String> out ) {
+		if( text == null ) {
+			return;
+		}
+		final int len = text.length();
+		int start = -1;
+		for( int i=0; i <= len; i++ ) {
+			final boolean tokenChar = i < len && Character.isLetterOrDigit( text.charAt( i ) );
+			if( tokenChar && start < 0 ) {
+				start = i;
+
+			} else if( ! tokenChar && start >= 0 ) {
+				out.add( text.substring( start, i ).toLowerCase() );
+				start = -1;
+			}
+		}
+	}
+
+}
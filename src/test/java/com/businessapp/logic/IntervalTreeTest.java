@@ -0,0 +1,79 @@
+package com.businessapp.logic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+/**
+ * Unit tests of IntervalTree: overlap queries of half-open intervals.
+ *
+ */
+public class IntervalTreeTest {
+
+	@Test
+	public void adjacentIntervalsDoNotOverlap() {
+		final IntervalTree tree = new IntervalTree();
+		tree.insert( 10, 20, "a" );
+		assertTrue( tree.overlaps( 15, 16 ) );
+		assertTrue( tree.overlaps( 0, 11 ) );
+		assertTrue( tree.overlaps( 19, 30 ) );
+		assertFalse( tree.overlaps( 20, 30 ) );
+		assertFalse( tree.overlaps( 0, 10 ) );
+	}
+
+	@Test
+	public void removeOnlyMatchingInterval() {
+		final IntervalTree tree = new IntervalTree();
+		tree.insert( 10, 20, "a" );
+		tree.insert( 10, 30, "b" );
+		assertFalse( tree.remove( 10, "c" ) );
+		assertTrue( tree.remove( 10, "a" ) );
+		assertEquals( 1, tree.size() );
+		assertTrue( tree.overlaps( 25, 26 ) );
+		assertTrue( tree.remove( 10, "b" ) );
+		assertFalse( tree.overlaps( 0, 100 ) );
+		assertEquals( 0, tree.size() );
+	}
+
+	@Test
+	public void overlappingMatchesLinearScan() {
+		final IntervalTree tree = new IntervalTree();
+		final List<long[]> intervals = new ArrayList<long[]>();
+		final Random random = new Random( 7 );
+		for( int i=0; i < 2000; i++ ) {
+			final long start = random.nextInt( 10000 );
+			final long end = start + 1 + random.nextInt( 100 );
+			intervals.add( new long[] { start, end } );
+			tree.insert( start, end, "i" + i );
+		}
+		for( int i=0; i < 500; i += 2 ) {
+			assertTrue( tree.remove( intervals.get( i )[ 0 ], "i" + i ) );
+		}
+		for( int q=0; q < 200; q++ ) {
+			final long from = random.nextInt( 10000 );
+			final long to = from + random.nextInt( 200 );
+			final List<String> expected = new ArrayList<String>();
+			for( int i=0; i < intervals.size(); i++ ) {
+				final long[] iv = intervals.get( i );
+				if( ( i >= 500 || i % 2 == 1 ) && iv[ 0 ] < to && from < iv[ 1 ] ) {
+					expected.add( "i" + i );
+				}
+			}
+			final List<String> found = new ArrayList<String>();
+			tree.overlapping( from, to, found );
+			Collections.sort( expected );
+			Collections.sort( found );
+			assertEquals( expected, found );
+			assertEquals( ! expected.isEmpty(), tree.overlaps( from, to ) );
+		}
+	}
+
+}
@@ -0,0 +1,82 @@
+package com.businessapp.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.businessapp.persistence.PersistenceProviderFactory.FsyncPolicy;
+
+
+/**
+ * Unit tests of AtomicFileWriter: target files are replaced as a whole or
+ * left unchanged, temporary files do not remain.
+ *
+ */
+public class AtomicFileWriterTest {
+
+	private Path dir;
+	private Path target;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory( "atomic" );
+		target = dir.resolve( "data.json" );
+	}
+
+	@After
+	public void tearDown() {
+		for( File f : dir.toFile().listFiles() ) {
+			f.delete();
+		}
+		dir.toFile().delete();
+	}
+
+
+	@Test
+	public void writeReplacesTarget() throws IOException {
+		final AtomicFileWriter writer = new AtomicFileWriter( FsyncPolicy.ALWAYS );
+		writer.write( target, out -> out.write( "old".getBytes() ) );
+		writer.write( target, out -> out.write( "new".getBytes() ) );
+
+		assertEquals( "new", new String( Files.readAllBytes( target ) ) );
+		assertEquals( 1, dir.toFile().list().length );
+	}
+
+	@Test
+	public void failedWriteKeepsTarget() throws IOException {
+		final AtomicFileWriter writer = new AtomicFileWriter( FsyncPolicy.ALWAYS );
+		writer.write( target, out -> out.write( "old".getBytes() ) );
+		try {
+			writer.write( target, out -> {
+				out.write( "partial".getBytes() );
+				throw new IOException( "disk full" );
+			});
+			fail( "failed write was not reported" );
+
+		} catch( IOException e ) {
+			assertEquals( "disk full", e.getMessage() );
+		}
+		assertEquals( "old", new String( Files.readAllBytes( target ) ) );
+		assertEquals( 1, dir.toFile().list().length );
+	}
+
+	@Test
+	public void batchedWritesReplaceTarget() throws IOException {
+		final AtomicFileWriter writer = new AtomicFileWriter( FsyncPolicy.BATCHED );
+		for( int i=0; i < 5; i++ ) {
+			final String content = "v" + i;
+			writer.write( target, out -> out.write( content.getBytes() ) );
+		}
+		assertEquals( "v4", new String( Files.readAllBytes( target ) ) );
+		assertEquals( 1, dir.toFile().list().length );
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.businessapp.persistence;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.businessapp.model.Customer;
+import com.businessapp.model.EntityIntf;
+import com.businessapp.model.Note;
+
+
+/**
+ * Unit tests of BinarySnapshotProvider: customers are restored as written.
+ *
+ */
+public class BinarySnapshotProviderTest {
+
+	private Path dir;
+	private BinarySnapshotProvider provider;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory( "binary" );
+		final String path = dir.resolve( "Customer" ).toString();
+		provider = new BinarySnapshotProvider( path, Customer.class, new JSONPersistenceProvider( path, Customer.class ) );
+	}
+
+	@After
+	public void tearDown() {
+		for( File f : dir.toFile().listFiles() ) {
+			f.delete();
+		}
+		dir.toFile().delete();
+	}
+
+
+	@Test
+	public void notesAreRestoredAsWritten() throws IOException {
+		final Customer none = new Customer( "C.000001", "Eric", "Meyer" );
+		none.getNotes().clear();
+		final Customer two = new Customer( "C.000002", "Anne", "Berg" );
+		two.getNotes().clear();
+		two.getNotes().add( new Note( 1000L, "first" ) );
+		two.getNotes().add( new Note( 2000L, "second" ) );
+		provider.writeSerialStream( Arrays.asList( none, two ) );
+
+		final List<EntityIntf> entities = new ArrayList<EntityIntf>();
+		provider.readSerialStream( entities::add );
+		assertEquals( 2, entities.size() );
+		assertEquals( 0, ((Customer)entities.get( 0 )).getNotes().size() );
+		final List<Note> notes = ((Customer)entities.get( 1 )).getNotes();
+		assertEquals( 2, notes.size() );
+		assertEquals( "first", notes.get( 0 ).getNoteText() );
+		assertEquals( "second", notes.get( 1 ).getNoteText() );
+	}
+
+}
@@ -0,0 +1,88 @@
+package com.businessapp.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.businessapp.model.Article;
+import com.businessapp.model.EntityIntf;
+
+
+/**
+ * Unit tests of JSONPersistenceProvider: streamed reads of complete files and
+ * rejection of corrupt or truncated files.
+ *
+ */
+public class JSONPersistenceProviderTest {
+
+	private Path dir;
+	private JSONPersistenceProvider provider;
+	private String json;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory( "json" );
+		provider = new JSONPersistenceProvider( dir.resolve( "Article" ).toString(), Article.class );
+		provider.writeSerialStream( Arrays.asList(
+			new Article( "A.000001", "Bike", "B", 10.0 ),
+			new Article( "A.000002", "Tent", "T", 20.0 )
+		));
+		json = new String( Files.readAllBytes( file() ) ).trim();
+	}
+
+	@After
+	public void tearDown() {
+		for( File f : dir.toFile().listFiles() ) {
+			f.delete();
+		}
+		dir.toFile().delete();
+	}
+
+
+	@Test
+	public void readsAllEntities() throws IOException {
+		final List<EntityIntf> entities = new ArrayList<EntityIntf>();
+		provider.readSerialStream( entities::add );
+		assertEquals( 2, entities.size() );
+		assertEquals( "A.000002", entities.get( 1 ).getId() );
+	}
+
+	@Test
+	public void corruptFilesAreRejected() throws IOException {
+		final int second = json.indexOf( ",{" );
+		for( String corrupt : Arrays.asList(
+				json.substring( 0, second ),				// truncated after first entity
+				json.substring( 0, second + 1 ),			// truncated after separator
+				json.substring( 0, second + 1 ) + "17" + json.substring( second ),
+				json + "garbage",
+				json + "[]" ) )
+		{
+			Files.write( file(), corrupt.getBytes() );
+			final List<EntityIntf> entities = new ArrayList<EntityIntf>();
+			try {
+				provider.readSerialStream( entities::add );
+				fail( "corrupt file was read: " + corrupt );
+
+			} catch( IOException e ) {
+				// expected
+			}
+		}
+	}
+
+
+	private Path file() {
+		return dir.resolve( "Article.json" );
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.businessapp.persistence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.businessapp.model.Article;
+import com.businessapp.model.EntityIntf;
+import com.businessapp.persistence.PersistenceProviderFactory.PersistenceSelector;
+
+
+/**
+ * Unit tests of JournalPersistenceProvider: replay of journal records on top
+ * of the snapshot and truncation of torn journal tails.
+ *
+ */
+public class JournalPersistenceProviderTest {
+
+	private Path dir;
+	private String path;
+	private Path journal;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory( "journal" );
+		path = dir.resolve( "Article" ).toString();
+		journal = dir.resolve( "Article.journal" );
+	}
+
+	@After
+	public void tearDown() {
+		for( File f : dir.toFile().listFiles() ) {
+			f.delete();
+		}
+		dir.toFile().delete();
+	}
+
+
+	@Test
+	public void replayAppliesRecordsInOrder() {
+		final PersistenceProviderIntf provider = provider();
+		final Article a1 = new Article( "A.000001", "Bike", "B", 10.0 );
+		provider.create( a1 );
+		provider.create( new Article( "A.000002", "Tent", "T", 20.0 ) );
+		a1.setName( "E-Bike" );
+		provider.update( a1 );
+		provider.delete( new Article( "A.000002", "Tent", "T", 20.0 ) );
+
+		final List<EntityIntf> entities = readAll( provider() );
+		assertEquals( 1, entities.size() );
+		assertEquals( "A.000001", entities.get( 0 ).getId() );
+		assertEquals( "E-Bike", ((Article)entities.get( 0 )).getName() );
+	}
+
+	@Test
+	public void tornTailIsTruncated() throws IOException {
+		final PersistenceProviderIntf provider = provider();
+		provider.create( new Article( "A.000001", "Bike", "B", 10.0 ) );
+		provider.create( new Article( "A.000002", "Tent", "T", 20.0 ) );
+		Files.write( journal, "{\"op\":\"create\",\"id\":\"A.000003\",\"enti".getBytes(), StandardOpenOption.APPEND );
+
+		final PersistenceProviderIntf reopened = provider();
+		assertEquals( Arrays.asList( "A.000001", "A.000002" ), ids( readAll( reopened ) ) );
+
+		reopened.create( new Article( "A.000004", "Kayak", "K", 30.0 ) );
+		assertEquals( Arrays.asList( "A.000001", "A.000002", "A.000004" ), ids( readAll( provider() ) ) );
+	}
+
+	@Test
+	public void corruptRecordBeforeLastIsNotTruncated() throws IOException {
+		final PersistenceProviderIntf provider = provider();
+		provider.create( new Article( "A.000001", "Bike", "B", 10.0 ) );
+		final String record = new String( Files.readAllBytes( journal ) );
+		final byte[] corrupt = ( record + "garbage\n" + record ).getBytes();
+		Files.write( journal, corrupt );
+
+		try {
+			readAll( provider() );
+			fail( "corrupt journal was read" );
+
+		} catch( UncheckedIOException e ) {
+			// expected
+		}
+		assertArrayEquals( corrupt, Files.readAllBytes( journal ) );
+	}
+
+	@Test
+	public void unreadableJournalIsNotOverwritten() throws IOException {
+		final PersistenceProviderIntf provider = provider();
+		provider.create( new Article( "A.000001", "Bike", "B", 10.0 ) );
+		final byte[] bad = new String( Files.readAllBytes( journal ) ).replace( "\"create\"", "\"frob\"" ).getBytes();
+		Files.write( journal, bad );
+
+		final PersistenceProviderIntf reopened = provider();
+		try {
+			readAll( reopened );
+			fail( "journal with unknown operation was read" );
+
+		} catch( UncheckedIOException e ) {
+			// expected
+		}
+		reopened.updateAll( new ArrayList<Article>() );
+		reopened.create( new Article( "A.000002", "Tent", "T", 20.0 ) );
+		assertArrayEquals( bad, Files.readAllBytes( journal ) );
+	}
+
+
+	private PersistenceProviderIntf provider() {
+		return PersistenceProviderFactory.getInstance( PersistenceSelector.JSONJournal, path, Article.class );
+	}
+
+	private static List<EntityIntf> readAll( PersistenceProviderIntf provider ) {
+		final List<EntityIntf> entities = new ArrayList<EntityIntf>();
+		provider.readAll( e -> {
+			entities.add( e );
+		});
+		return entities;
+	}
+
+	private static List<String> ids( List<EntityIntf> entities ) {
+		final List<String> ids = new ArrayList<String>();
+		for( EntityIntf e : entities ) {
+			ids.add( e.getId() );
+		}
+		return ids;
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.businessapp.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.businessapp.model.Customer;
+import com.businessapp.model.Customer.CustomerStatus;
+import com.businessapp.persistence.Query.Condition;
+import com.businessapp.persistence.Query.Op;
+
+
+/**
+ * Unit tests of Query: selector parsing, value normalization and selection.
+ *
+ */
+public class QueryTest {
+
+	@Test
+	public void parseSelector() {
+		final List<Condition> conditions = Query.parse( "status = ACTIVE and name ^= 'Mc''s' and  age>=18" ).getConditions();
+		assertEquals( 3, conditions.size() );
+		assertCondition( conditions.get( 0 ), "status", Op.eq, "ACTIVE" );
+		assertCondition( conditions.get( 1 ), "name", Op.prefix, "Mc's" );
+		assertCondition( conditions.get( 2 ), "age", Op.ge, 18L );
+
+		assertCondition( Query.parse( "name != null" ).getConditions().get( 0 ), "name", Op.ne, null );
+		assertCondition( Query.parse( "price < 9.5" ).getConditions().get( 0 ), "price", Op.lt, 9.5 );
+		assertTrue( Query.parse( "  " ).getConditions().isEmpty() );
+		assertTrue( Query.parse( null ).getConditions().isEmpty() );
+	}
+
+	@Test
+	public void malformedSelectorsAreRejected() {
+		for( String selector : Arrays.asList( "name", "name =", "name = 'open", "= x", "a = 1 b = 2", "a = 1 and", "a ~ 1" ) ) {
+			try {
+				Query.parse( selector );
+				throw new AssertionError( "selector was accepted: " + selector );
+
+			} catch( IllegalArgumentException e ) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void numbersAreNormalized() {
+		assertEquals( 42L, Query.normalize( 42 ) );
+		assertEquals( 42L, Query.normalize( (short)42 ) );
+		assertEquals( 42L, Query.normalize( 42.0 ) );
+		assertEquals( 42.5, Query.normalize( 42.5f ) );
+		assertEquals( 1e300, Query.normalize( 1e300 ) );
+		assertEquals( "ACTIVE", Query.normalize( CustomerStatus.ACTIVE ) );
+		assertEquals( 1000L, Query.normalize( new Date( 1000L ) ) );
+		assertNull( Query.normalize( null ) );
+
+		assertEquals( 0, Query.compareValues( 42L, 42.0 ) );
+		assertTrue( Query.compareValues( Long.MAX_VALUE - 1, Long.MAX_VALUE ) < 0 );
+		assertTrue( Query.compareValues( null, 1L ) < 0 );
+		assertTrue( Query.compareValues( 2L, 10.5 ) < 0 );
+	}
+
+	@Test
+	public void selectMatchesSortsAndLimits() {
+		final List<Customer> customers = new ArrayList<Customer>();
+		customers.add( new Customer( "C.000001", "Eric", "Meyer" ) );
+		customers.add( new Customer( "C.000002", "Anne", "Berg" ) );
+		customers.add( new Customer( "C.000003", "Eva", "Meier" ) );
+		customers.add( new Customer( "C.000004", "Tom", "Mann" ) );
+		customers.get( 3 ).setStatus( CustomerStatus.SUSPENDED );
+
+		assertEquals( Arrays.asList( "C.000001", "C.000003" ),
+				ids( Query.parse( "name ^= Me and status = ACTIVE" ).select( customers ) ) );
+
+		final Query sorted = new Query( Query.parse( "name ^= M" ).getConditions(), "name", false, 1, 2 );
+		assertEquals( Arrays.asList( "C.000003", "C.000001" ), ids( sorted.select( customers ) ) );
+
+		final Query descending = new Query( new ArrayList<Condition>(), "name", true, 0, Query.NoLimit );
+		assertEquals( Arrays.asList( "C.000001", "C.000003", "C.000004", "C.000002" ), ids( descending.select( customers ) ) );
+	}
+
+
+	private static void assertCondition( Condition c, String field, Op op, Object value ) {
+		assertEquals( field, c.getField() );
+		assertEquals( op, c.getOp() );
+		assertEquals( value, c.getValue() );
+	}
+
+	private static List<String> ids( List<Customer> customers ) {
+		final List<String> ids = new ArrayList<String>();
+		for( Customer c : customers ) {
+			ids.add( c.getId() );
+		}
+		return ids;
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.businessapp.repositories;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.businessapp.logic.IDGenerator;
+
+
+/**
+ * Unit tests of IdMap: packed and overflow ids, deletion from probe chains.
+ *
+ */
+public class IdMapTest {
+
+	private final IDGenerator codec = new IDGenerator( "T.", IDGenerator.IDTYPE.NUM, 4 );
+
+
+	@Test
+	public void packedAndOverflowIds() {
+		final IdMap<String> map = new IdMap<String>( codec );
+		map.put( "T.0001", "packed" );
+		map.put( "X-17", "overflow" );
+		assertEquals( 2, map.size() );
+		assertEquals( "packed", map.get( "T.0001" ) );
+		assertEquals( "packed", map.getPacked( codec.pack( "T.0001" ) ) );
+		assertEquals( "overflow", map.get( "X-17" ) );
+		assertNull( map.get( "T.0002" ) );
+
+		assertEquals( "packed", map.put( "T.0001", "replaced" ) );
+		assertEquals( 2, map.size() );
+		assertEquals( "replaced", map.remove( "T.0001" ) );
+		assertEquals( "overflow", map.remove( "X-17" ) );
+		assertNull( map.remove( "X-17" ) );
+		assertEquals( 0, map.size() );
+	}
+
+	@Test
+	public void deletionKeepsProbeChains() {
+		final IdMap<Integer> map = new IdMap<Integer>( codec );
+		final HashMap<String,Integer> reference = new HashMap<String,Integer>();
+		final Random random = new Random( 42 );
+		for( int i=0; i < 20000; i++ ) {
+			final String id = String.format( "T.%04d", random.nextInt( 200 ) );
+			if( random.nextInt( 3 ) == 0 ) {
+				assertEquals( reference.remove( id ), map.remove( id ) );
+			} else {
+				assertEquals( reference.put( id, i ), map.put( id, i ) );
+			}
+			assertEquals( reference.size(), map.size() );
+		}
+		for( int i=0; i < 200; i++ ) {
+			final String id = String.format( "T.%04d", i );
+			assertEquals( reference.get( id ), map.get( id ) );
+		}
+	}
+
+	@Test
+	public void clearRemovesAllIds() {
+		final IdMap<String> map = new IdMap<String>( codec );
+		for( int i=0; i < 100; i++ ) {
+			map.put( String.format( "T.%04d", i ), "v" + i );
+		}
+		map.put( "X-17", "overflow" );
+		map.clear();
+		assertEquals( 0, map.size() );
+		assertNull( map.get( "T.0050" ) );
+		assertNull( map.get( "X-17" ) );
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.businessapp.repositories;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.businessapp.model.Customer;
+import com.businessapp.model.EntityIntf;
+import com.businessapp.model.Reservation;
+
+
+/**
+ * Unit tests of keyset pagination of in-memory repositories.
+ *
+ */
+public class RepositoryPagingTest {
+
+	private CustomerRepositoryImpl customers;
+	private ReservationRepositoryImpl reservations;
+
+	@Before
+	public void setUp() {
+		customers = new CustomerRepositoryImpl( new ArrayList<Customer>(), () -> null, new ReentrantLock() );
+		customers.loadAll( Arrays.asList(
+			new Customer( "C.000005", "Eric", "Meyer" ),
+			new Customer( "C.000002", "Anne", "Berg" ),
+			new Customer( "C.000004", "Eva", "Meier" ),
+			new Customer( "C.000001", "Tom", "Mann" ),
+			new Customer( "C.000003", "Ina", "Berg" )
+		));
+		customers.addRangeIndex( "name", Customer::getName );
+		reservations = new ReservationRepositoryImpl( new ArrayList<Reservation>() );
+		reservations.loadAll( Arrays.asList(
+			new Reservation( "R.000003", "C.000005", new Date( 3000L ) ),
+			new Reservation( "R.000001", "C.000002", new Date( 1000L ) ),
+			new Reservation( "R.000002", "C.000005", new Date( 2000L ) )
+		));
+	}
+
+
+	@Test
+	public void findPageWalksSortOrder() {
+		assertEquals( Arrays.asList( "C.000002", "C.000003", "C.000001", "C.000004", "C.000005" ), walk( "name", 2 ) );
+		assertEquals( Arrays.asList( "C.000001", "C.000002", "C.000003", "C.000004", "C.000005" ), walk( null, 3 ) );
+		assertEquals( Arrays.asList( "R.000001", "R.000002", "R.000003" ), walkReservations( "date", 1 ) );
+	}
+
+	@Test
+	public void findPageContinuesAfterDeletedCursor() {
+		final List<Customer> first = customers.findPage( PageCursor.first( "name" ), 2 );
+		assertEquals( Arrays.asList( "C.000002", "C.000003" ), ids( first ) );
+		final PageCursor cursor = PageCursor.after( first.get( 1 ), "name" );
+		customers.delete( "C.000003" );
+		assertEquals( Arrays.asList( "C.000001", "C.000004" ), ids( customers.findPage( cursor, 2 ) ) );
+	}
+
+	@Test
+	public void findPageAfterIdContinuesAfterEntity() {
+		assertEquals( Arrays.asList( "C.000002", "C.000003" ), ids( customers.findPage( null, 2, "name" ) ) );
+		assertEquals( Arrays.asList( "C.000001", "C.000004" ), ids( customers.findPage( "C.000003", 2, "name" ) ) );
+		assertEquals( Arrays.asList( "C.000004", "C.000005" ), ids( customers.findPage( "C.000003", 5, null ) ) );
+		assertTrue( customers.findPage( "C.000005", 2, null ).isEmpty() );
+	}
+
+	@Test
+	public void findPageSeeksWithinKeyOfManyIds() {
+		final List<Customer> many = new ArrayList<Customer>();
+		for( int i=100; i < 1100; i++ ) {
+			many.add( new Customer( String.format( "C.%06d", i ), "Eva", "Berg" ) );
+		}
+		customers.loadAll( many );
+		final List<String> walked = walk( "name", 7 );
+		assertEquals( 1005, walked.size() );
+		assertEquals( Arrays.asList( "C.000002", "C.000003", "C.000100", "C.000101" ), walked.subList( 0, 4 ) );
+		assertEquals( "C.001099", walked.get( 1001 ) );
+		assertEquals( "C.000001", walked.get( 1002 ) );
+	}
+
+	@Test
+	public void findPageRequiresDeclaredOrderedIndex() {
+		for( String sortKey : Arrays.asList( "firstName", CustomerRepositoryIntf.StatusIndex ) ) {
+			try {
+				customers.findPage( PageCursor.first( sortKey ), 2 );
+				fail( "paged by undeclared ordered index " + sortKey );
+
+			} catch( IllegalArgumentException e ) {
+				// expected
+			}
+		}
+	}
+
+
+	private List<String> walk( String sortKey, int limit ) {
+		final List<String> ids = new ArrayList<String>();
+		PageCursor cursor = PageCursor.first( sortKey );
+		for( List<Customer> page = customers.findPage( cursor, limit ); page.size() > 0; page = customers.findPage( cursor, limit ) ) {
+			ids.addAll( ids( page ) );
+			cursor = PageCursor.after( page.get( page.size() - 1 ), sortKey );
+		}
+		return ids;
+	}
+
+	private List<String> walkReservations( String sortKey, int limit ) {
+		final List<String> ids = new ArrayList<String>();
+		PageCursor cursor = PageCursor.first( sortKey );
+		for( List<Reservation> page = reservations.findPage( cursor, limit ); page.size() > 0; page = reservations.findPage( cursor, limit ) ) {
+			ids.addAll( ids( page ) );
+			cursor = PageCursor.after( page.get( page.size() - 1 ), sortKey );
+		}
+		return ids;
+	}
+
+	private static List<String> ids( List<? extends EntityIntf> entities ) {
+		final List<String> ids = new ArrayList<String>();
+		for( EntityIntf e : entities ) {
+			ids.add( e.getId() );
+		}
+		return ids;
+	}
+
+}
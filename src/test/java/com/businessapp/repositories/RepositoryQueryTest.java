@@ -0,0 +1,90 @@
+package com.businessapp.repositories;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.businessapp.model.Customer;
+import com.businessapp.model.Customer.CustomerStatus;
+import com.businessapp.model.EntityIntf;
+import com.businessapp.model.Reservation;
+import com.businessapp.persistence.Query;
+
+
+/**
+ * Unit tests of queries and ordered indexes of in-memory repositories.
+ *
+ */
+public class RepositoryQueryTest {
+
+	private CustomerRepositoryImpl customers;
+	private ReservationRepositoryImpl reservations;
+
+	@Before
+	public void setUp() {
+		customers = new CustomerRepositoryImpl( new ArrayList<Customer>(), () -> null, new ReentrantLock() );
+		customers.loadAll( Arrays.asList(
+			new Customer( "C.000005", "Eric", "Meyer" ),
+			new Customer( "C.000002", "Anne", "Berg" ),
+			new Customer( "C.000004", "Eva", "Meier" ),
+			new Customer( "C.000001", "Tom", "Mann" ),
+			new Customer( "C.000003", "Ina", "Berg" )
+		));
+		reservations = new ReservationRepositoryImpl( new ArrayList<Reservation>() );
+		reservations.loadAll( Arrays.asList(
+			new Reservation( "R.000003", "C.000005", new Date( 3000L ) ),
+			new Reservation( "R.000001", "C.000002", new Date( 1000L ) ),
+			new Reservation( "R.000002", "C.000005", new Date( 2000L ) )
+		));
+	}
+
+
+	@Test
+	public void indexedFindKeepsInsertionOrder() {
+		final Customer c = customers.findById( "C.000001" );
+		c.setStatus( CustomerStatus.SUSPENDED );
+		customers.update( c, false );
+		assertEquals( Arrays.asList( "C.000005", "C.000002", "C.000004", "C.000003" ),
+				ids( customers.find( Query.parse( "status = ACTIVE" ) ) ) );
+		assertEquals( Arrays.asList( "R.000002" ),
+				ids( reservations.find( Query.parse( "customerId = C.000005 and date < 2500" ) ) ) );
+		assertEquals( Arrays.asList( "R.000003", "R.000002" ),
+				ids( reservations.find( Query.parse( "customerId = C.000005" ) ) ) );
+	}
+
+	@Test
+	public void reinsertedEntityMovesToEnd() {
+		final Customer c = customers.findById( "C.000002" );
+		customers.delete( "C.000002" );
+		customers.update( c, true );
+		assertEquals( Arrays.asList( "C.000005", "C.000004", "C.000001", "C.000003", "C.000002" ),
+				ids( customers.find( Query.parse( "status = ACTIVE" ) ) ) );
+		assertEquals( ids( customers.findAll() ), ids( customers.find( Query.parse( "status = ACTIVE" ) ) ) );
+	}
+
+	@Test
+	public void rangeIndexAcceptsAnyNumberType() {
+		assertEquals( Arrays.asList( "R.000001", "R.000002" ), ids( reservations.findByRange( ReservationRepositoryIntf.DateIndex, 1000, 2001 ) ) );
+		assertEquals( Arrays.asList( "R.000002" ), ids( reservations.findByRange( ReservationRepositoryIntf.DateIndex, 1500.0, 2000.5 ) ) );
+		assertTrue( reservations.findByRange( ReservationRepositoryIntf.DateIndex, 1500.0, 2000L ).isEmpty() );
+		assertTrue( reservations.findByRange( ReservationRepositoryIntf.DateIndex, 3000, 1000 ).isEmpty() );
+	}
+
+
+	private static List<String> ids( List<? extends EntityIntf> entities ) {
+		final List<String> ids = new ArrayList<String>();
+		for( EntityIntf e : entities ) {
+			ids.add( e.getId() );
+		}
+		return ids;
+	}
+
+}
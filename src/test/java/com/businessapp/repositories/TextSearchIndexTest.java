@@ -0,0 +1,74 @@
+package com.businessapp.repositories;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.businessapp.model.Customer;
+import com.businessapp.repositories.RepositoryListenerIntf.Change;
+
+
+/**
+ * Unit tests of TextSearchIndex: prefix matching, ranking and index updates.
+ *
+ */
+public class TextSearchIndexTest {
+
+	private TextSearchIndex<Customer> index;
+
+	@Before
+	public void setUp() {
+		index = new TextSearchIndex<Customer>( ( c, fields ) -> {
+			fields.add( c.getName(), 2 );
+			fields.add( c.getFirstName(), 1 );
+		});
+	}
+
+
+	@Test
+	public void prefixesOfAllTokensMatch() {
+		index.changed( Change.inserted, new Customer( "C.000001", "Eric", "Meyer" ) );
+		index.changed( Change.inserted, new Customer( "C.000002", "Anne", "Meyerhoff" ) );
+		index.changed( Change.inserted, new Customer( "C.000003", "Eric", "Schulz" ) );
+
+		assertEquals( Arrays.asList( "C.000001", "C.000002" ), index.search( "mey", 10 ) );
+		assertEquals( Arrays.asList( "C.000001" ), index.search( "Eric Mey", 10 ) );
+		assertTrue( index.search( "Anne Schulz", 10 ).isEmpty() );
+		assertTrue( index.search( "", 10 ).isEmpty() );
+	}
+
+	@Test
+	public void exactAndWeightedMatchesRankFirst() {
+		index.changed( Change.inserted, new Customer( "C.000001", "Meyer", "Schulz" ) );
+		index.changed( Change.inserted, new Customer( "C.000002", "Anne", "Meyerhoff" ) );
+		index.changed( Change.inserted, new Customer( "C.000003", "Eric", "Meyer" ) );
+
+		assertEquals( "C.000003", index.search( "meyer", 10 ).get( 0 ) );
+		assertEquals( 1, index.search( "meyer", 1 ).size() );
+	}
+
+	@Test
+	public void updatesAndDeletesAreReflected() {
+		final Customer c = new Customer( "C.000001", "Eric", "Meyer" );
+		index.changed( Change.inserted, c );
+		index.changed( Change.inserted, new Customer( "C.000002", "Anne", "Schulz" ) );
+
+		c.setName( "Berg" );
+		index.changed( Change.updated, c );
+		assertTrue( index.search( "meyer", 10 ).isEmpty() );
+		assertEquals( Arrays.asList( "C.000001" ), index.search( "berg", 10 ) );
+
+		index.changed( Change.deleted, c );
+		assertTrue( index.search( "berg", 10 ).isEmpty() );
+
+		index.changed( Change.cleared, null );
+		assertTrue( index.search( "schulz", 10 ).isEmpty() );
+		index.changed( Change.inserted, new Customer( "C.000003", "Eva", "Schulz" ) );
+		assertEquals( Arrays.asList( "C.000003" ), index.search( "schulz", 10 ) );
+	}
+
+}